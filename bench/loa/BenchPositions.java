@@ -0,0 +1,131 @@
+package loa;
+
+/**
+ * Fixed positions the benchmarks run on, by phase of the game.
+ * <p>
+ * The positions are in the text format of {@link Board#parse(String)}.
+ * They were taken from engine games with some random moves mixed in;
+ * none of them is won. There is a corpus for the 6x6 board the game is
+ * played on by default and one for the 8x8 board.
+ */
+public final class BenchPositions {
+    /** The starting position and positions a few moves into the game. */
+    public static final String[] OPENING = {
+            ".WWWW.R....RR....RR....RR....R.WWWW. R",
+            ".WWR..R.R..RR...W..W.R..R....R..WWW. W",
+            ".WW.W.R...R.RW...RR..RWRR........WW. R",
+            ".W.R....R..RW.....RW...R.....R.WR.W. W",
+            ".WW.W.R....R..W....R....R..RW..W.RW. R",
+            "...W..R.....RWW.WR.W.R..R....R.WR.WR W",
+            "..W.W.R...R.RW....WW...R..R..R..WWWR R",
+            "R.WWW.R.....RW...RR...W...WR.R..WW.R W",
+    };
+
+    /** Positions after 15 to 30 moves with most pieces still on the board. */
+    public static final String[] MIDDLEGAME = {
+            ".W..W...R.W..W...R..RWRRW.....R..... R",
+            "RW......R..R.WW.RW.R.R.......R.R.... W",
+            ".W......W..WRWW............R..R.WRW. R",
+            ".W..W.....RR........WWW.R.RW....R.R. W",
+            "....W....RRRR...R.....R..W.W.R....W. R",
+            ".RR.W...WRR.R.W.....WW.R..WR......W. R",
+            ".RR.W...WRR.R.W.WR..WW....WR........ R",
+            "..R...R.W..W..RR...RWW..R....R...R.. W",
+    };
+
+    /** Positions with ten pieces or fewer left. */
+    public static final String[] ENDGAME = {
+            "..W.W...R..R..W.....WR......W..R..W. R",
+            ".R....R...WW...W...R.......R.R..W.R. W",
+            "R........RWR.....R..R....WR...W..... W",
+            "....R.....W..WWR....W.....RRRR...... R",
+            ".WW.....R..RR.WW.............R.R..W. R",
+            ".........W.R..R.....RR..R.RR......W. R",
+            ".W.W..R.R....R.......R.R....W..W.W.. W",
+            "......R.R....WRRR..R.W.....RW....... W",
+    };
+
+    /** The starting position on the 8x8 board and positions a few moves into the game. */
+    public static final String[] OPENING_8 = {
+            ".WWWWWW.R......RR......RR......RR......RR......RR......R.WWWWWW. R",
+            ".WWWWWW...R....R..R....RR......RR.......R.W...WRR....R.R.W.WWW.. W",
+            ".W.WWW..R....R....R.W.WRR......RR.......R.W....RR....R.R.W.WWWW. R",
+            "..WWWWW.R......RR...........R..RR...WR.RR...RW.RR........WWW..W. W",
+            ".W...WW........RR..WW...R.W....RR....R.RR...R..RR......R.WWW.WW. R",
+            ".WWWWWW.R.R.....R....R.....W...RR......RR...WW.RR......R..WWW..R W",
+            ".WWWWWW.R.R....R..R..R.R.......RR.......R..W.W.RR......R..WWW.W. W",
+            ".WWWWWW...R....RR.......R......R..R....RR..WR..RR......R.WWW..W. R",
+    };
+
+    /** Positions on the 8x8 board after 20 to 40 moves with most pieces still on it. */
+    public static final String[] MIDDLEGAME_8 = {
+            ".W........R.......WRRR....R.....R...W.....R..RWR...WWR.R........ W",
+            ".W....W.R.RW.R...R..R.W.R....R.....WRWW......W.....R.R.R....WW.. R",
+            ".....W..R..W................W.RRR.RWRR....RRRR..R.....W......... W",
+            "...W........R......RRW..R.W.R.....R....R...R.W.RR....WWR.W.W.... W",
+            "...R..............W.RWW...RRWW..R.W.R...R....R.....W.R.........R R",
+            "...WWW...WRR.R.R..R.WW......R...R..R......WRRR..R............... R",
+            ".W.......WR....RRW.....R.....R.....W.......R...RR....R.R.WW.R.W. W",
+            ".W.......WR....RRW.R.........R.............R...RR....R.R.WW.R.W. W",
+    };
+
+    /** Positions on the 8x8 board with fourteen pieces or fewer left. */
+    public static final String[] ENDGAME_8 = {
+            ".........WR.......RR......RWR.......W.R......RRR....RR.......... W",
+            ".........R..........R...R..W....W.RR.W....WR..RR......W......... R",
+            "...............RRR..W...R.RR....R..W.......R..........RR........ R",
+            "....R...R.W........RRW.R........R.......R..W.RR.R..R............ W",
+            "........R...........WR..R..R........W.....R..W..R..R.R....RW.... W",
+            "............R...R...RW.R...RR......R...RW...R.....R........R.... W",
+            "........R....W...R..RW.R.WW.RR..R.R.....R..R.................... R",
+            "....R.........R....RR.W.....RWWR.W...R..RW........R............. W",
+    };
+
+    private BenchPositions() {
+    }
+
+    /**
+     * Returns the positions of a phase of the game on the 6x6 board.
+     *
+     * @param phase "opening", "middlegame" or "endgame"
+     * @return new boards set up with the positions
+     */
+    public static Board[] of(String phase) {
+        return of(phase, 6);
+    }
+
+    /**
+     * Returns the positions of a phase of the game.
+     *
+     * @param phase "opening", "middlegame" or "endgame"
+     * @param size the size of the board, 6 or 8
+     * @return new boards set up with the positions
+     */
+    public static Board[] of(String phase, int size) {
+        if (size != 6 && size != 8) {
+            throw new IllegalArgumentException("No positions for board size: " + size);
+        }
+
+        String[] corpus;
+        switch (phase) {
+            case "opening":
+                corpus = size == 6 ? OPENING : OPENING_8;
+                break;
+            case "middlegame":
+                corpus = size == 6 ? MIDDLEGAME : MIDDLEGAME_8;
+                break;
+            case "endgame":
+                corpus = size == 6 ? ENDGAME : ENDGAME_8;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown phase: " + phase);
+        }
+
+        Board[] boards = new Board[corpus.length];
+        for (int i = 0; i < corpus.length; i++) {
+            boards[i] = Board.parse(corpus[i]);
+        }
+
+        return boards;
+    }
+}
@@ -0,0 +1,50 @@
+package loa;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the benchmarks with the allocation profiler and saves the results
+ * as JSON, so runs can be compared over time.
+ * <p>
+ * The arguments are regular expressions of the benchmarks to run, e.g.
+ * {@code Evaluation} or {@code SearchBenchmark.fixedDepth}; with none, all
+ * of them run. The results go to {@code bench-results/jmh-<date>.json}.
+ * Besides the score in ops/s, every benchmark reports
+ * {@code gc.alloc.rate.norm} in bytes per operation, and the search
+ * benchmarks report nodes/s.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        File dir = new File("bench-results");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + dir);
+        }
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        File result = new File(dir, "jmh-" + stamp + ".json");
+
+        OptionsBuilder options = new OptionsBuilder();
+        if (args.length == 0) {
+            options.include(BenchmarkMain.class.getPackageName() + "\\..*Benchmark");
+        }
+        for (String pattern : args) {
+            options.include(pattern);
+        }
+        options.addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getPath());
+
+        new Runner(options.build()).run();
+        System.out.println("Results saved to " + result);
+    }
+}
@@ -0,0 +1,109 @@
+package loa;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Evaluator#getScore} and each of its six terms, for the side to
+ * move in every position of a phase. One operation covers the whole
+ * corpus of the phase.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluationBenchmark {
+    @Param({ "opening", "middlegame", "endgame" })
+    public String phase;
+
+    private final Evaluator evaluator = new Evaluator();
+    private Board[] boards;
+
+    @Setup
+    public void setUp() {
+        boards = BenchPositions.of(phase);
+    }
+
+    @Benchmark
+    public int score() {
+        int sum = 0;
+        for (Board board : boards) {
+            sum += evaluator.getScore(board, board.getSideToMove());
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int totalWeight() {
+        int sum = 0;
+        for (Board board : boards) {
+            sum += evaluator.getTotalWeight(board, board.getSideToMove());
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int density() {
+        int sum = 0;
+        for (Board board : boards) {
+            sum += evaluator.getDensityScore(board, board.getSideToMove());
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int area() {
+        int sum = 0;
+        for (Board board : boards) {
+            sum += evaluator.getArea(board, board.getSideToMove());
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int mobility() {
+        int sum = 0;
+        for (Board board : boards) {
+            sum += evaluator.getMobility(board, board.getSideToMove());
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int connectedness() {
+        int sum = 0;
+        for (Board board : boards) {
+            sum += evaluator.getConnectedness(board, board.getSideToMove());
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int quadCount() {
+        int sum = 0;
+        for (Board board : boards) {
+            sum += evaluator.getQuadCount(board, board.getSideToMove());
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,65 @@
+package loa;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * All moves of the side to move in every position of a phase, with the
+ * reference {@link ReferenceRules#availableMoves} and with {@link MoveGenerator},
+ * on the 6x6 and the 8x8 board. One operation covers the whole corpus of
+ * the phase.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveGenerationBenchmark {
+    @Param({ "opening", "middlegame", "endgame" })
+    public String phase;
+
+    @Param({ "6", "8" })
+    public int size;
+
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private Board[] boards;
+
+    @Setup
+    public void setUp() {
+        boards = BenchPositions.of(phase, size);
+    }
+
+    @Benchmark
+    public void availableMoves(Blackhole bh) {
+        for (Board board : boards) {
+            long pcs = board.getPieces(board.getSideToMove());
+            for (; pcs != 0; pcs &= pcs - 1) {
+                int sq = Long.numberOfTrailingZeros(pcs);
+                bh.consume(ReferenceRules.availableMoves(board, Board.colOf(sq), Board.rowOf(sq)));
+            }
+        }
+    }
+
+    @Benchmark
+    public int generateMoves() {
+        int count = 0;
+        for (Board board : boards) {
+            count += MoveGenerator.generateMoves(board, moves, 0);
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,61 @@
+package loa;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for the parallel search to finish a fixed depth from the starting
+ * position, by number of threads.
+ * <p>
+ * The speedup of n threads is the score of 1 thread divided by the score
+ * of n threads. The table is cleared before every search so each one
+ * starts cold.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelSearchBenchmark {
+    @Param({ "1", "2", "4", "8", "16" })
+    public int threads;
+
+    @Param({ "6" })
+    public int depth;
+
+    private TranspositionTable table;
+    private ParallelSearch search;
+    private Board board;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        table = new TranspositionTable(64);
+        EngineConfig config = new EngineConfig();
+        config.setThreads(threads);
+        search = new ParallelSearch(table, config);
+        board = Board.initial();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        table.clear();
+    }
+
+    @Benchmark
+    public int timeToDepth() {
+        return search.run(board, depth, 0, 0);
+    }
+}
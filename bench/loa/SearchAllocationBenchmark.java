@@ -0,0 +1,55 @@
+package loa;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-threaded search to a fixed depth, to be run with {@code -prof gc}.
+ * <p>
+ * Moves are packed ints written into buffers the search allocates once, and
+ * the board and evaluation work on masks, so the normalised allocation rate
+ * ({@code gc.alloc.rate.norm}) should stay close to 0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchAllocationBenchmark {
+    @Param({ "4", "5" })
+    public int depth;
+
+    private TranspositionTable table;
+    private Search search;
+    private Board board;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        table = new TranspositionTable(16);
+        search = new Search(new Evaluator(), table, new EngineConfig());
+        board = Board.initial();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        table.clear();
+    }
+
+    @Benchmark
+    public int fixedDepth() {
+        return search.run(board, depth, 0, 0);
+    }
+}
@@ -0,0 +1,80 @@
+package loa;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single-threaded search to a fixed depth from every position of a
+ * phase, on the 6x6 and the 8x8 board. One operation covers the whole
+ * corpus of the phase, and the nodes searched are reported next to it as
+ * a rate, so the two board sizes can be compared.
+ * <p>
+ * The table is cleared before every position so each search starts cold.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+    @Param({ "opening", "middlegame", "endgame" })
+    public String phase;
+
+    @Param({ "6", "8" })
+    public int size;
+
+    @Param({ "3", "4" })
+    public int depth;
+
+    private TranspositionTable table;
+    private Search search;
+    private Board[] boards;
+
+    /**
+     * Nodes searched, main and quiescence ones together; JMH reports the
+     * count per second.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Nodes {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        table = new TranspositionTable(1);
+        search = new Search(new Evaluator(), table, new EngineConfig());
+        boards = BenchPositions.of(phase, size);
+    }
+
+    @Benchmark
+    public int fixedDepth(Nodes counter) {
+        int moves = 0;
+        for (Board board : boards) {
+            table.clear();
+            moves += search.run(board, depth, 0, 0);
+            counter.nodes += search.getNodes() + search.getQuiescenceNodes();
+        }
+
+        return moves;
+    }
+}
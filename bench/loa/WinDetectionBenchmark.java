@@ -0,0 +1,70 @@
+package loa;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Win detection in every position of a phase: {@link Board#getWinner},
+ * the reference {@link ReferenceRules#getWinner} and a single
+ * {@link ReferenceRules#ctgPcsAt} flood fill from the first piece of the side
+ * to move. One operation covers the whole corpus of the phase.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class WinDetectionBenchmark {
+    @Param({ "opening", "middlegame", "endgame" })
+    public String phase;
+
+    private Board[] boards;
+    private TilePosition[] firstPieces;
+
+    @Setup
+    public void setUp() {
+        boards = BenchPositions.of(phase);
+        firstPieces = new TilePosition[boards.length];
+        for (int i = 0; i < boards.length; i++) {
+            int sq = Long.numberOfTrailingZeros(boards[i].getPieces(boards[i].getSideToMove()));
+            firstPieces[i] = new TilePosition(Board.colOf(sq), Board.rowOf(sq));
+        }
+    }
+
+    @Benchmark
+    public void winner(Blackhole bh) {
+        for (Board board : boards) {
+            bh.consume(board.getWinner());
+        }
+    }
+
+    @Benchmark
+    public void referenceWinner(Blackhole bh) {
+        for (Board board : boards) {
+            bh.consume(ReferenceRules.getWinner(board));
+        }
+    }
+
+    @Benchmark
+    public int ctgPcsAt() {
+        int sum = 0;
+        for (int i = 0; i < boards.length; i++) {
+            sum += ReferenceRules.ctgPcsAt(boards[i], boards[i].getSideToMove(), firstPieces[i]);
+        }
+
+        return sum;
+    }
+}
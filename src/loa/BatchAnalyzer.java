@@ -0,0 +1,415 @@
+package loa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Scores a large set of positions with the engine, on all cores.
+ * <p>
+ * The positions are read one at a time and handed to a pool of worker
+ * threads, each with a {@link Search} and a transposition table of its
+ * own. Every position is searched to a fixed depth or node budget, from an
+ * empty table and with no move ordering learnt from the positions before
+ * it, so the results do not depend on the load of the machine, the number
+ * of threads or which thread takes the position. The results come out in
+ * the order of the input, and only a few positions per thread are in
+ * flight at once, so memory stays bounded however many positions there
+ * are.
+ * <p>
+ * As the table is cleared for every position, it is only as large as one
+ * search needs: 4 MB per worker unless the hash size is set. A larger one
+ * mostly adds the time to clear it.
+ * <p>
+ * The input is either a text file with a position per line, as
+ * {@link Board#parse} reads it, lines starting with {@code #} skipped, or
+ * a binary game record file, whose every position with a move played
+ * from it is analysed. The output has a line per position, with the tab
+ * separated fields: the number of the position in the input, from 0, the
+ * position, the score for the side to move, the best move, the depth
+ * completed, the nodes searched, the time in milliseconds and the
+ * principal variation. Lines starting with {@code #} are comments.
+ * <p>
+ * Every line is flushed as it is written, so a job that is interrupted
+ * can be resumed with {@code --resume}: the positions with a line in the
+ * output are skipped, and a line cut short is dropped.
+ * <p>
+ * Usage: {@code java loa.BatchAnalyzer --in path [options]}, where the
+ * options are
+ * <ul>
+ *     <li>{@code --out path}: the output file, analysis.tsv by default</li>
+ *     <li>{@code --depth n}: the depth of every search, 6 by default
+ *     unless a node budget is given</li>
+ *     <li>{@code --nodes n}: the node budget of every search</li>
+ *     <li>{@code --threads n}: the number of workers, one per core by
+ *     default</li>
+ *     <li>{@code --engine name=value,...}: settings of the engine, by the
+ *     names of {@link EngineConfig#set}</li>
+ *     <li>{@code --resume}: carry on with the output file of an
+ *     interrupted job instead of starting it over</li>
+ * </ul>
+ */
+public final class BatchAnalyzer {
+    /** Positions in flight per worker, enough to keep all of them busy. */
+    private static final int WINDOW_PER_THREAD = 4;
+
+    /** Size of the table of a worker, unless set, in MB. */
+    private static final int DEFAULT_HASH_MB = 4;
+
+    private final EngineConfig config;
+    private final int[] weights;
+    private final int depth;
+    private final long nodeLimit;
+
+    /** The search state of each worker thread, kept from one position to the next. */
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    /**
+     * Creates an analyser.
+     *
+     * @param config the settings of the engine; the threads and the time
+     *               budget are not used
+     * @param weights the evaluation weights, in the order of
+     *                {@link Evaluator#TERMS}
+     * @param depth the depth of every search
+     * @param nodeLimit the node budget of every search, or 0 for none
+     */
+    public BatchAnalyzer(EngineConfig config, int[] weights, int depth, long nodeLimit) {
+        this.config = config;
+        this.weights = weights;
+        this.depth = depth;
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Analyses positions on a pool of threads and passes on the results in
+     * the order of the positions.
+     *
+     * @param positions the positions
+     * @param skip the number of positions at the start that are read but
+     *             not analysed, as when resuming
+     * @param threads the number of worker threads
+     * @param results given the result of every position, on the calling
+     *                thread
+     * @return the number of positions read, those skipped included
+     */
+    public long run(Iterator<Board> positions, long skip, int threads, Consumer<Result> results) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "loa-analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ArrayDeque<Future<Result>> window = new ArrayDeque<>();
+        long read = 0;
+        try {
+            while (positions.hasNext()) {
+                Board board = positions.next();
+                long index = read++;
+                if (index < skip) continue;
+
+                window.add(pool.submit(() -> analyze(index, board)));
+                if (window.size() >= threads * WINDOW_PER_THREAD) {
+                    results.accept(window.remove().get());
+                }
+            }
+            while (!window.isEmpty()) {
+                results.accept(window.remove().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Analysis interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Analysis failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return read;
+    }
+
+    /**
+     * Analyses one position with the search state of the calling thread.
+     *
+     * @param index the number of the position
+     * @param board the position, left as it was on return
+     * @return the result
+     */
+    public Result analyze(long index, Board board) {
+        Worker worker = workers.get();
+        worker.table.clear();
+        worker.search.getOrdering().clear();
+
+        long start = System.nanoTime();
+        int move = worker.search.run(board, depth, 0, nodeLimit);
+        long elapsed = System.nanoTime() - start;
+
+        Search search = worker.search;
+        return new Result(index, board.toString(), search.getBestScore(), move, search.getCompletedDepth(),
+                search.getNodes() + search.getQuiescenceNodes(), elapsed, search.getPv());
+    }
+
+    /**
+     * The search and table of one worker thread.
+     */
+    private final class Worker {
+        private final TranspositionTable table = new TranspositionTable(config.getHashSizeMb());
+        private final Search search = new Search(new Evaluator(weights), table, config);
+    }
+
+    /**
+     * The analysis of a position.
+     */
+    public static class Result {
+        private final long index;
+        private final String position;
+        private final int score;
+        private final int move;
+        private final int depth;
+        private final long nodes;
+        private final long nanos;
+        private final int[] pv;
+
+        public Result(long index, String position, int score, int move, int depth,
+                      long nodes, long nanos, int[] pv) {
+            this.index = index;
+            this.position = position;
+            this.score = score;
+            this.move = move;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.nanos = nanos;
+            this.pv = pv;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public String getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the score for the side to move, within a ply count of WIN or
+         * -WIN of {@link Search} if the game is decided.
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the best move, or Move.NONE if there is no legal move.
+         */
+        public int getMove() {
+            return move;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int[] getPv() {
+            return pv;
+        }
+
+        /**
+         * Returns the line of the result in the output.
+         */
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder();
+            line.append(index).append('\t').append(position).append('\t').append(score).append('\t')
+                    .append(move == Move.NONE ? "none" : Move.toString(move)).append('\t')
+                    .append(depth).append('\t').append(nodes).append('\t').append(nanos / 1_000_000).append('\t');
+            for (int k = 0; k < pv.length; k++) {
+                if (k > 0) line.append(' ');
+                line.append(Move.toString(pv[k]));
+            }
+
+            return line.toString();
+        }
+    }
+
+    /**
+     * Reads the positions of an input file lazily. The stream must be
+     * closed to close the file.
+     *
+     * @param path a text file of positions or a binary game record file
+     * @return the positions
+     * @throws IOException if the file cannot be opened
+     */
+    public static Stream<Board> positions(Path path) throws IOException {
+        if (GameRecords.isBinary(path)) {
+            return GameRecords.stream(path).flatMap(game -> {
+                Board board = Board.initial(Geometry.of(game.getSize()));
+                int[] moves = game.getMoves();
+                return IntStream.range(0, moves.length).mapToObj(i -> {
+                    Board position = new Board(board);
+                    board.makeMove(Move.from(moves[i]), Move.to(moves[i]));
+                    return position;
+                });
+            });
+        }
+
+        return Files.lines(path)
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(Board::parse);
+    }
+
+    /**
+     * Counts the results in the output of an interrupted job, and cuts off
+     * a line left unfinished at its end.
+     *
+     * @param path the output file
+     * @return the number of results, 0 if there is no file
+     * @throws IOException if the file cannot be read or cut
+     */
+    static long resume(Path path) throws IOException {
+        if (!Files.exists(path)) return 0;
+
+        long results = 0;
+        long end = 0;
+        long offset = 0;
+        boolean lineStart = true;
+        boolean comment = false;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                offset++;
+                if (lineStart) {
+                    comment = b == '#';
+                    lineStart = false;
+                }
+                if (b == '\n') {
+                    if (!comment) results++;
+                    end = offset;
+                    lineStart = true;
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+        }
+
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException {
+        EngineConfig config = EngineConfig.fromSystemProperties();
+        config.setHashSizeMb(Integer.getInteger("loa.hash", DEFAULT_HASH_MB));
+        Path in = null;
+        Path out = Path.of("analysis.tsv");
+        int depth = 0;
+        long nodes = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean resume = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--in":
+                        in = Path.of(args[++i]);
+                        break;
+                    case "--out":
+                        out = Path.of(args[++i]);
+                        break;
+                    case "--depth":
+                        depth = Integer.parseInt(args[++i]);
+                        break;
+                    case "--nodes":
+                        nodes = Long.parseLong(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--engine":
+                        for (String setting : args[++i].split(",")) {
+                            String[] pair = setting.split("=", 2);
+                            if (pair.length != 2) {
+                                throw new IllegalArgumentException("Not a setting: " + setting);
+                            }
+                            config.set(pair[0].trim(), pair[1].trim());
+                        }
+                        break;
+                    case "--resume":
+                        resume = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (in == null) {
+                throw new IllegalArgumentException("No input: give --in");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java loa.BatchAnalyzer --in path [--out path] [--depth n] [--nodes n]"
+                    + " [--threads n] [--engine name=value,...] [--resume]");
+            System.exit(2);
+        }
+
+        if (depth == 0) {
+            depth = nodes > 0 ? Search.MAX_PLY : 6;
+        }
+        int[] weights = config.getWeights().isEmpty() ? Evaluator.defaultWeights()
+                : Evaluator.readWeights(Path.of(config.getWeights()));
+        BatchAnalyzer analyzer = new BatchAnalyzer(config, weights, depth, nodes);
+
+        long done = resume ? resume(out) : 0;
+        if (done > 0) {
+            System.out.println("Resuming after " + done + " positions");
+        }
+
+        long start = System.nanoTime();
+        long[] analysed = new long[1];
+        try (Stream<Board> positions = positions(in);
+             BufferedWriter writer = Files.newBufferedWriter(out, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (done == 0 && (!resume || Files.size(out) == 0)) {
+                writer.write("# index\tposition\tscore\tmove\tdepth\tnodes\ttime_ms\tpv");
+                writer.newLine();
+            }
+
+            long read = analyzer.run(positions.iterator(), done, threads, result -> {
+                try {
+                    writer.write(result.toString());
+                    writer.newLine();
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                analysed[0]++;
+            });
+
+            long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            System.out.println("Analysed " + analysed[0] + " of " + read + " positions in " + elapsedMs
+                    + " ms, " + analysed[0] * 1000 / elapsedMs + " per second, to " + out);
+        }
+    }
+}
@@ -0,0 +1,700 @@
+package loa;
+
+import java.util.Arrays;
+
+/**
+ * A compact, GUI-free game position used by the search.
+ * <p>
+ * The pieces of each side are kept in a {@code long} occupancy mask where
+ * the tile at col x and row y is bit {@code x * 8 + y} whatever the size
+ * of the board, so the set bits come out in the same order as a scan over
+ * {@code board[x][y]}. The size and the tables that depend on it come
+ * from the board's {@link Geometry}. Moves are
+ * made and unmade in place, so the search never has to build {@link Tile}
+ * or {@link Piece} nodes.
+ * <p>
+ * The number of pieces on every row, col and diagonal is kept up to date
+ * on each move, which is all the move generator needs to know how far a
+ * piece travels.
+ * <p>
+ * For each side the Euler number of its pieces (groups minus holes, with
+ * pieces touching at corners counted as connected) is kept up to date from
+ * the 2x2 quads around the squares a move touches. A side whose Euler
+ * number is above one has more than one group, so most positions are ruled
+ * out as wins without looking at the pieces.
+ * <p>
+ * A Zobrist hash of the position is kept up to date as well, for the
+ * transposition table.
+ * <p>
+ * Finally, the running sums the {@link Evaluator} is built on are kept per
+ * side: the piece-square weights, the coordinate sums for the centre of
+ * mass and the pieces in crowded quads. A move only touches the terms of
+ * the squares it changes.
+ */
+public class Board {
+    /** Number of lines a square lies on: its row, col and two diagonals. */
+    public static final int AXES = 4;
+
+    /** Axis of the row, the col, the diagonal where x and y grow together, and the other diagonal. */
+    public static final int ROW = 0, COL = 1, DIAG = 2, ANTI_DIAG = 3;
+
+    /** Squares are numbered {@code x << SHIFT | y}. */
+    private static final int SHIFT = 3;
+
+    /** The size of the board and the tables that go with it. */
+    private final Geometry geometry;
+
+    /** Occupancy mask of the red pieces. */
+    private long red;
+
+    /** Occupancy mask of the white pieces. */
+    private long white;
+
+    /** The side that makes the next move. */
+    private PieceType sideToMove = PieceType.RED;
+
+    /** Number of pieces of either side on every row, col and diagonal. */
+    private final int[] lineCounts;
+
+    /** Four times the Euler number of the red and of the white pieces. */
+    private int redEuler, whiteEuler;
+
+    /** Zobrist hash of the pieces and the side to move. */
+    private long hash;
+
+    /** Sum of the square weights of the red and of the white pieces. */
+    private int redWeight, whiteWeight;
+
+    /** Sums of the cols and of the rows of the red and of the white pieces. */
+    private int redXSum, whiteXSum, redYSum, whiteYSum;
+
+    /** Number of red and of white pieces in quads holding three or four of them. */
+    private int redCrowd, whiteCrowd;
+
+    /**
+     * Creates an empty board of the default size.
+     */
+    public Board() {
+        this(Geometry.of(Geometry.DEFAULT_SIZE));
+    }
+
+    /**
+     * Creates an empty board.
+     *
+     * @param geometry the size of the board
+     */
+    public Board(Geometry geometry) {
+        this.geometry = geometry;
+        this.lineCounts = new int[geometry.lines];
+    }
+
+    public Board(Board other) {
+        this.geometry = other.geometry;
+        this.lineCounts = new int[geometry.lines];
+        this.red = other.red;
+        this.white = other.white;
+        this.sideToMove = other.sideToMove;
+        System.arraycopy(other.lineCounts, 0, this.lineCounts, 0, lineCounts.length);
+        this.redEuler = other.redEuler;
+        this.whiteEuler = other.whiteEuler;
+        this.hash = other.hash;
+        this.redWeight = other.redWeight;
+        this.whiteWeight = other.whiteWeight;
+        this.redXSum = other.redXSum;
+        this.whiteXSum = other.whiteXSum;
+        this.redYSum = other.redYSum;
+        this.whiteYSum = other.whiteYSum;
+        this.redCrowd = other.redCrowd;
+        this.whiteCrowd = other.whiteCrowd;
+    }
+
+    /**
+     * Returns a board of the default size set up with the starting layout.
+     *
+     * @return the starting position with red to move
+     */
+    public static Board initial() {
+        return initial(Geometry.of(Geometry.DEFAULT_SIZE));
+    }
+
+    /**
+     * Returns a board set up with the starting layout of the game: red on
+     * the first and last row, white on the first and last col, the corners
+     * left empty.
+     *
+     * @param geometry the size of the board
+     * @return the starting position with red to move
+     */
+    public static Board initial(Geometry geometry) {
+        int size = geometry.getSize();
+        Board board = new Board(geometry);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if ((y == 0 || y == size - 1) && (x > 0 && x < size - 1)) {
+                    board.setPiece(x, y, PieceType.RED);
+                }
+                if ((x == 0 || x == size - 1) && (y > 0 && y < size - 1)) {
+                    board.setPiece(x, y, PieceType.WHITE);
+                }
+            }
+        }
+
+        return board;
+    }
+
+    /**
+     * Sets up a board from the text written by {@link #toString()}.
+     * <p>
+     * The text lists the tiles col by col, {@code [0][0], [0][1], ...}, as
+     * {@code R} for red, {@code W} for white or {@code .} for empty,
+     * followed by a space and the side to move, {@code R} or {@code W}.
+     * The size of the board follows from the number of tiles.
+     *
+     * @param text the position
+     * @return the board
+     * @throws IllegalArgumentException if the text is not a position
+     */
+    public static Board parse(String text) {
+        String s = text.trim();
+        int size = (int) Math.round(Math.sqrt(Math.max(0, s.length() - 2)));
+        if (size < Geometry.MIN_SIZE || size > Geometry.MAX_SIZE
+                || s.length() != size * size + 2 || s.charAt(size * size) != ' ') {
+            throw new IllegalArgumentException("Not a position: " + text);
+        }
+
+        Board board = new Board(Geometry.of(size));
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                char c = s.charAt(x * size + y);
+                if (c == 'R') board.setPiece(x, y, PieceType.RED);
+                else if (c == 'W') board.setPiece(x, y, PieceType.WHITE);
+                else if (c != '.') throw new IllegalArgumentException("Not a position: " + text);
+            }
+        }
+
+        char side = s.charAt(size * size + 1);
+        if (side == 'W') board.setSideToMove(PieceType.WHITE);
+        else if (side != 'R') throw new IllegalArgumentException("Not a position: " + text);
+
+        return board;
+    }
+
+    /**
+     * Returns the position as text that {@link #parse(String)} reads back.
+     */
+    @Override
+    public String toString() {
+        int size = geometry.size;
+        StringBuilder sb = new StringBuilder(size * size + 2);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                long bit = 1L << square(x, y);
+                sb.append((red & bit) != 0 ? 'R' : (white & bit) != 0 ? 'W' : '.');
+            }
+        }
+        sb.append(' ').append(sideToMove == PieceType.WHITE ? 'W' : 'R');
+
+        return sb.toString();
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public static int square(int x, int y) {
+        return x << SHIFT | y;
+    }
+
+    public static int colOf(int square) {
+        return square >>> SHIFT;
+    }
+
+    public static int rowOf(int square) {
+        return square & ((1 << SHIFT) - 1);
+    }
+
+    public static PieceType opponent(PieceType side) {
+        return side == PieceType.RED ? PieceType.WHITE : PieceType.RED;
+    }
+
+    public PieceType getSideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(PieceType sideToMove) {
+        if (sideToMove != this.sideToMove) hash ^= geometry.whiteToMoveKey;
+        this.sideToMove = sideToMove;
+    }
+
+    /**
+     * Returns the Zobrist hash of the position.
+     *
+     * @return a 64-bit key that is equal for equal positions
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the occupancy mask of a side.
+     *
+     * @param side the side (RED or WHITE)
+     * @return the mask of the tiles holding a piece of side param
+     */
+    public long getPieces(PieceType side) {
+        return side == PieceType.RED ? red : white;
+    }
+
+    public long getOccupied() {
+        return red | white;
+    }
+
+    /**
+     * Returns the total number of pieces of a side on the board.
+     *
+     * @param side the side of the pieces to be counted
+     * @return the number of pieces of side param
+     */
+    public int count(PieceType side) {
+        return Long.bitCount(getPieces(side));
+    }
+
+    /**
+     * Returns the number of pieces on a line through a square.
+     *
+     * @param square the square
+     * @param axis ROW, COL, DIAG or ANTI_DIAG
+     * @return the number of pieces of either side on the line
+     */
+    public int lineCount(int square, int axis) {
+        return lineCounts[geometry.lineOf[square * AXES + axis]];
+    }
+
+    private void updateLines(int square, int delta) {
+        int[] lineOf = geometry.lineOf;
+        int base = square * AXES;
+        lineCounts[lineOf[base]] += delta;
+        lineCounts[lineOf[base + 1]] += delta;
+        lineCounts[lineOf[base + 2]] += delta;
+        lineCounts[lineOf[base + 3]] += delta;
+    }
+
+    /**
+     * Returns the type of the piece on the tile.
+     *
+     * @param x col number of the tile
+     * @param y row number of the tile
+     * @return the type of the piece, or NONE if the tile is empty
+     */
+    public PieceType getPiece(int x, int y) {
+        long bit = 1L << square(x, y);
+        if ((red & bit) != 0) return PieceType.RED;
+        if ((white & bit) != 0) return PieceType.WHITE;
+        return PieceType.NONE;
+    }
+
+    /**
+     * Puts a piece on a tile, replacing whatever was there.
+     *
+     * @param x col number of the tile
+     * @param y row number of the tile
+     * @param type type of the piece, or NONE to clear the tile
+     */
+    public void setPiece(int x, int y, PieceType type) {
+        int sq = square(x, y);
+        long bit = 1L << sq;
+        if (((red | white) & bit) != 0) updateLines(sq, -1);
+        if ((red & bit) != 0) hash ^= geometry.redKeys[sq];
+        if ((white & bit) != 0) hash ^= geometry.whiteKeys[sq];
+        red &= ~bit;
+        white &= ~bit;
+        if (type == PieceType.RED) {
+            red |= bit;
+            hash ^= geometry.redKeys[sq];
+        }
+        else if (type == PieceType.WHITE) {
+            white |= bit;
+            hash ^= geometry.whiteKeys[sq];
+        }
+        if (type != PieceType.NONE) updateLines(sq, 1);
+        updateSums();
+    }
+
+    /**
+     * Replaces the whole position at once.
+     *
+     * @param red the occupancy mask of the red pieces
+     * @param white the occupancy mask of the white pieces
+     * @param sideToMove the side that makes the next move
+     */
+    public void setPosition(long red, long white, PieceType sideToMove) {
+        this.red = red;
+        this.white = white;
+        this.sideToMove = sideToMove;
+
+        Arrays.fill(lineCounts, 0);
+        hash = sideToMove == PieceType.WHITE ? geometry.whiteToMoveKey : 0;
+        for (long pcs = red; pcs != 0; pcs &= pcs - 1) {
+            int sq = Long.numberOfTrailingZeros(pcs);
+            updateLines(sq, 1);
+            hash ^= geometry.redKeys[sq];
+        }
+        for (long pcs = white; pcs != 0; pcs &= pcs - 1) {
+            int sq = Long.numberOfTrailingZeros(pcs);
+            updateLines(sq, 1);
+            hash ^= geometry.whiteKeys[sq];
+        }
+        updateSums();
+    }
+
+    /**
+     * Works out the Euler numbers and the running sums of the evaluator
+     * from scratch.
+     */
+    private void updateSums() {
+        redEuler = euler(red);
+        whiteEuler = euler(white);
+
+        redWeight = 0;
+        whiteWeight = 0;
+        redXSum = whiteXSum = redYSum = whiteYSum = 0;
+        for (int k = 0; k < Geometry.SQUARES; k++) {
+            if ((red & (1L << k)) != 0) {
+                redWeight += geometry.squareWeight[k];
+                redXSum += colOf(k);
+                redYSum += rowOf(k);
+            }
+            if ((white & (1L << k)) != 0) {
+                whiteWeight += geometry.squareWeight[k];
+                whiteXSum += colOf(k);
+                whiteYSum += rowOf(k);
+            }
+        }
+        redCrowd = crowd(red);
+        whiteCrowd = crowd(white);
+    }
+
+    /**
+     * Checks if the specified tile is inside the board.
+     *
+     * @param x col number of the tile
+     * @param y row number of the tile
+     * @return true if tile at col x and row y is inside the board
+     */
+    public boolean isWithinBoard(int x, int y) {
+        return geometry.isWithinBoard(x, y);
+    }
+
+    /**
+     * Checks if the piece on the tile is of the specified type.
+     *
+     * @param x col number of the tile
+     * @param y row number of the tile
+     * @param type type of the piece (RED or WHITE)
+     * @return true if the piece at col x and row y is of `type`
+     */
+    public boolean hasPieceOnXY(int x, int y, PieceType type) {
+        if (!isWithinBoard(x, y)) return false;
+        return (getPieces(type) & (1L << square(x, y))) != 0;
+    }
+
+    public boolean hasPiece(int x, int y) {
+        return isWithinBoard(x, y) && (getOccupied() & (1L << square(x, y))) != 0;
+    }
+
+    /**
+     * Moves the piece of the side to move and hands the turn over.
+     * <p>
+     * The move is not validated; it must come from the move generator.
+     *
+     * @param from the square to move the piece from
+     * @param to the square to move the piece to
+     * @return true if an opponent piece was captured on the target square
+     */
+    public boolean makeMove(int from, int to) {
+        long fromBit = 1L << from;
+        long toBit = 1L << to;
+        boolean captured;
+
+        if (sideToMove == PieceType.RED) {
+            captured = (white & toBit) != 0;
+            if (captured) {
+                whiteEuler += eulerDelta(white, white & ~toBit, to);
+                whiteCrowd += crowdDelta(white, white & ~toBit, to);
+                whiteWeight -= geometry.squareWeight[to];
+                whiteXSum -= colOf(to);
+                whiteYSum -= rowOf(to);
+                white &= ~toBit;
+                hash ^= geometry.whiteKeys[to];
+            }
+            redEuler += eulerDelta(red, red ^ fromBit, from)
+                    + eulerDelta(red ^ fromBit, red ^ fromBit ^ toBit, to);
+            redCrowd += crowdDelta(red, red ^ fromBit, from)
+                    + crowdDelta(red ^ fromBit, red ^ fromBit ^ toBit, to);
+            redWeight += geometry.squareWeight[to] - geometry.squareWeight[from];
+            redXSum += colOf(to) - colOf(from);
+            redYSum += rowOf(to) - rowOf(from);
+            red ^= fromBit | toBit;
+            hash ^= geometry.redKeys[from] ^ geometry.redKeys[to];
+            sideToMove = PieceType.WHITE;
+        }
+        else {
+            captured = (red & toBit) != 0;
+            if (captured) {
+                redEuler += eulerDelta(red, red & ~toBit, to);
+                redCrowd += crowdDelta(red, red & ~toBit, to);
+                redWeight -= geometry.squareWeight[to];
+                redXSum -= colOf(to);
+                redYSum -= rowOf(to);
+                red &= ~toBit;
+                hash ^= geometry.redKeys[to];
+            }
+            whiteEuler += eulerDelta(white, white ^ fromBit, from)
+                    + eulerDelta(white ^ fromBit, white ^ fromBit ^ toBit, to);
+            whiteCrowd += crowdDelta(white, white ^ fromBit, from)
+                    + crowdDelta(white ^ fromBit, white ^ fromBit ^ toBit, to);
+            whiteWeight += geometry.squareWeight[to] - geometry.squareWeight[from];
+            whiteXSum += colOf(to) - colOf(from);
+            whiteYSum += rowOf(to) - rowOf(from);
+            white ^= fromBit | toBit;
+            hash ^= geometry.whiteKeys[from] ^ geometry.whiteKeys[to];
+            sideToMove = PieceType.RED;
+        }
+        hash ^= geometry.whiteToMoveKey;
+
+        updateLines(from, -1);
+        if (!captured) updateLines(to, 1);
+
+        return captured;
+    }
+
+    /**
+     * Takes back a move made with {@link #makeMove(int, int)}.
+     *
+     * @param from the square the piece was moved from
+     * @param to the square the piece was moved to
+     * @param captured the value returned by makeMove
+     */
+    public void unmakeMove(int from, int to, boolean captured) {
+        long fromBit = 1L << from;
+        long toBit = 1L << to;
+
+        if (sideToMove == PieceType.RED) {
+            // White made the move
+            whiteEuler += eulerDelta(white, white ^ toBit, to)
+                    + eulerDelta(white ^ toBit, white ^ toBit ^ fromBit, from);
+            whiteCrowd += crowdDelta(white, white ^ toBit, to)
+                    + crowdDelta(white ^ toBit, white ^ toBit ^ fromBit, from);
+            whiteWeight += geometry.squareWeight[from] - geometry.squareWeight[to];
+            whiteXSum += colOf(from) - colOf(to);
+            whiteYSum += rowOf(from) - rowOf(to);
+            white ^= fromBit | toBit;
+            hash ^= geometry.whiteKeys[from] ^ geometry.whiteKeys[to];
+            if (captured) {
+                redEuler += eulerDelta(red, red | toBit, to);
+                redCrowd += crowdDelta(red, red | toBit, to);
+                redWeight += geometry.squareWeight[to];
+                redXSum += colOf(to);
+                redYSum += rowOf(to);
+                red |= toBit;
+                hash ^= geometry.redKeys[to];
+            }
+            sideToMove = PieceType.WHITE;
+        }
+        else {
+            redEuler += eulerDelta(red, red ^ toBit, to)
+                    + eulerDelta(red ^ toBit, red ^ toBit ^ fromBit, from);
+            redCrowd += crowdDelta(red, red ^ toBit, to)
+                    + crowdDelta(red ^ toBit, red ^ toBit ^ fromBit, from);
+            redWeight += geometry.squareWeight[from] - geometry.squareWeight[to];
+            redXSum += colOf(from) - colOf(to);
+            redYSum += rowOf(from) - rowOf(to);
+            red ^= fromBit | toBit;
+            hash ^= geometry.redKeys[from] ^ geometry.redKeys[to];
+            if (captured) {
+                whiteEuler += eulerDelta(white, white | toBit, to);
+                whiteCrowd += crowdDelta(white, white | toBit, to);
+                whiteWeight += geometry.squareWeight[to];
+                whiteXSum += colOf(to);
+                whiteYSum += rowOf(to);
+                white |= toBit;
+                hash ^= geometry.whiteKeys[to];
+            }
+            sideToMove = PieceType.RED;
+        }
+        hash ^= geometry.whiteToMoveKey;
+
+        updateLines(from, 1);
+        if (!captured) updateLines(to, -1);
+    }
+
+    /**
+     * Checks if all the pieces of a side are contiguous.
+     * <p>
+     * Runs in constant time when the Euler number shows more than one
+     * group, and falls back to a flood fill over the mask otherwise.
+     *
+     * @param side the side
+     * @return true if side param has at least one piece and all are connected
+     */
+    public boolean isConnected(PieceType side) {
+        long pcs = getPieces(side);
+        if (pcs == 0) return false;
+        if ((side == PieceType.RED ? redEuler : whiteEuler) > 4) return false;
+
+        long group = Long.lowestOneBit(pcs);
+        while (true) {
+            long next = geometry.neighbours(group) & pcs;
+            if (next == group) return group == pcs;
+            group = next;
+        }
+    }
+
+    /**
+     * Returns a PieceType object of the winning side.
+     * <p>
+     * If a move connects both sides at once, NONE is returned; the search
+     * scores that as a win for the side that made the move.
+     *
+     * @return piece type of the winner if the game is over, otherwise null
+     */
+    public PieceType getWinner() {
+        boolean redWon = isConnected(PieceType.RED);
+        boolean whiteWon = isConnected(PieceType.WHITE);
+
+        if (redWon && whiteWon) return PieceType.NONE;
+        if (redWon) return PieceType.RED;
+        if (whiteWon) return PieceType.WHITE;
+
+        return null;
+    }
+
+    /**
+     * Returns the size of the largest group of pieces of a side.
+     *
+     * @param side the side
+     * @return the number of pieces in the largest group of side param
+     */
+    public int largestGroup(PieceType side) {
+        long pcs = getPieces(side);
+        int largest = 0;
+        while (pcs != 0) {
+            long group = Long.lowestOneBit(pcs);
+            while (true) {
+                long next = geometry.neighbours(group) & pcs;
+                if (next == group) break;
+                group = next;
+            }
+            largest = Math.max(largest, Long.bitCount(group));
+            pcs &= ~group;
+        }
+
+        return largest;
+    }
+
+    /**
+     * Returns the sum of the square weights of the pieces of a side.
+     *
+     * @param side the side
+     * @return the sum over the pieces of side param of their weight
+     *         in {@link Evaluator#pieceSquareTable}
+     */
+    public int getWeight(PieceType side) {
+        return side == PieceType.RED ? redWeight : whiteWeight;
+    }
+
+    /**
+     * Returns the sum of the cols of the pieces of a side.
+     */
+    public int getXSum(PieceType side) {
+        return side == PieceType.RED ? redXSum : whiteXSum;
+    }
+
+    /**
+     * Returns the sum of the rows of the pieces of a side.
+     */
+    public int getYSum(PieceType side) {
+        return side == PieceType.RED ? redYSum : whiteYSum;
+    }
+
+    /**
+     * Returns the number of pieces of a side in crowded quads.
+     * <p>
+     * Every 2x2 quad on the board that holds three or four pieces of the
+     * side adds that number, so a piece is counted once per quad.
+     *
+     * @param side the side
+     * @return the sum over the crowded quads of their number of pieces
+     */
+    public int getCrowd(PieceType side) {
+        return side == PieceType.RED ? redCrowd : whiteCrowd;
+    }
+
+    /**
+     * Returns the contribution of a quad to four times the Euler number.
+     * <p>
+     * With pieces touching at corners counted as connected, four times the
+     * Euler number is the number of quads holding one piece, less the number
+     * holding three, less twice the number holding two diagonal pieces.
+     */
+    private int quadWeight(long pieces, int quad) {
+        long m = pieces & geometry.quadMask[quad];
+        switch (Long.bitCount(m)) {
+            case 1:
+                return 1;
+            case 2:
+                return m == geometry.quadDiag[quad] || m == geometry.quadAntiDiag[quad] ? -2 : 0;
+            case 3:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    private int eulerDelta(long before, long after, int square) {
+        int delta = 0;
+        for (int k = square * 4; k < square * 4 + 4; k++) {
+            int quad = geometry.quadsOf[k];
+            delta += quadWeight(after, quad) - quadWeight(before, quad);
+        }
+
+        return delta;
+    }
+
+    /**
+     * Returns the number of pieces in a quad if it lies on the board and
+     * holds at least three of them.
+     */
+    private int crowdWeight(long pieces, int quad) {
+        int n = Long.bitCount(pieces & geometry.quadMask[quad]);
+        return geometry.quadInside[quad] && n >= 3 ? n : 0;
+    }
+
+    private int crowdDelta(long before, long after, int square) {
+        int delta = 0;
+        for (int k = square * 4; k < square * 4 + 4; k++) {
+            int quad = geometry.quadsOf[k];
+            delta += crowdWeight(after, quad) - crowdWeight(before, quad);
+        }
+
+        return delta;
+    }
+
+    private int crowd(long pieces) {
+        int sum = 0;
+        for (int quad = 0; quad < geometry.quads; quad++) {
+            sum += crowdWeight(pieces, quad);
+        }
+
+        return sum;
+    }
+
+    private int euler(long pieces) {
+        int sum = 0;
+        for (int quad = 0; quad < geometry.quads; quad++) {
+            sum += quadWeight(pieces, quad);
+        }
+
+        return sum;
+    }
+}
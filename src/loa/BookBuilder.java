@@ -0,0 +1,194 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds an {@link OpeningBook} from self-play games and game records.
+ * <p>
+ * Every move played in the first plies of a game is scored for the side
+ * that played it: two points if that side went on to win, one for a
+ * draw, none for a loss. A move goes into the book with its points as
+ * its weight, if its position came up in enough games and the move
+ * scored at all. Games can also come from record files, in the format
+ * {@link GameRecords} reads.
+ * <p>
+ * Usage: {@code java loa.BookBuilder [options]}, where the options are
+ * <ul>
+ *     <li>{@code --out path}: the book file to write, book.bin by default</li>
+ *     <li>{@code --games n}: the number of self-play games, 1000 by default</li>
+ *     <li>{@code --records path}: a file of game records to add; may be
+ *     given more than once</li>
+ *     <li>{@code --engine name=value,...}: settings of the engine playing
+ *     the games, by the names of {@link EngineConfig#set}</li>
+ *     <li>{@code --concurrency n}: the number of games played at once, one
+ *     per core by default</li>
+ *     <li>{@code --openings n}: the number of random moves the self-play
+ *     games start with, 4 by default</li>
+ *     <li>{@code --plies n}: the number of plies of every game that go
+ *     into the book, 12 by default</li>
+ *     <li>{@code --min-games n}: the number of games a position must come
+ *     up in, 2 by default</li>
+ *     <li>{@code --size n}: the size of the board, 6 by default</li>
+ *     <li>{@code --seed n}: the seed of the random openings</li>
+ * </ul>
+ */
+public final class BookBuilder {
+    private final Geometry geometry;
+    private final int plies;
+
+    /** Points of every move, by position hash and move. */
+    private final Map<Long, Map<Integer, Integer>> points = new HashMap<>();
+
+    /** Number of games every position came up in. */
+    private final Map<Long, Integer> games = new HashMap<>();
+
+    /**
+     * Creates an empty builder.
+     *
+     * @param geometry the size of the board
+     * @param plies the number of plies of every game that go into the book
+     */
+    public BookBuilder(Geometry geometry, int plies) {
+        this.geometry = geometry;
+        this.plies = plies;
+    }
+
+    /**
+     * Adds the first plies of a game.
+     *
+     * @param moves the moves of the game from the starting position
+     * @param winner the side that won, or NONE for a draw
+     */
+    public void add(int[] moves, PieceType winner) {
+        Board board = Board.initial(geometry);
+        for (int ply = 0; ply < moves.length && ply < plies; ply++) {
+            long key = board.getHash();
+            PieceType side = board.getSideToMove();
+            int score = winner == PieceType.NONE ? 1 : winner == side ? 2 : 0;
+
+            games.merge(key, 1, Integer::sum);
+            points.computeIfAbsent(key, k -> new HashMap<>()).merge(moves[ply], score, Integer::sum);
+            board.makeMove(Move.from(moves[ply]), Move.to(moves[ply]));
+        }
+    }
+
+    /**
+     * Adds the games of a record file.
+     *
+     * @param path the record file
+     * @return the number of games added
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a game
+     */
+    public int addRecords(Path path) throws IOException {
+        return GameRecords.read(path, geometry, this::add);
+    }
+
+    /**
+     * Writes the book.
+     *
+     * @param path the book file, replaced if it exists
+     * @param minGames the number of games a position must come up in
+     * @return the number of positions written
+     * @throws IOException if the file cannot be written
+     */
+    public int write(Path path, int minGames) throws IOException {
+        Map<Long, Map<Integer, Integer>> book = new HashMap<>();
+        for (Map.Entry<Long, Map<Integer, Integer>> position : points.entrySet()) {
+            if (games.get(position.getKey()) >= minGames) {
+                book.put(position.getKey(), position.getValue());
+            }
+        }
+        OpeningBook.write(path, geometry.getSize(), book);
+
+        return book.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        EngineConfig config = EngineConfig.fromSystemProperties();
+        Path out = Path.of("book.bin");
+        List<Path> records = new ArrayList<>();
+        int games = 1000;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int openingMoves = 4, plies = 12, minGames = 2;
+        int size = Geometry.DEFAULT_SIZE;
+        long seed = 1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out":
+                        out = Path.of(args[++i]);
+                        break;
+                    case "--games":
+                        games = Integer.parseInt(args[++i]);
+                        break;
+                    case "--records":
+                        records.add(Path.of(args[++i]));
+                        break;
+                    case "--engine":
+                        for (String setting : args[++i].split(",")) {
+                            String[] pair = setting.split("=", 2);
+                            if (pair.length != 2) {
+                                throw new IllegalArgumentException("Not a setting: " + setting);
+                            }
+                            config.set(pair[0].trim(), pair[1].trim());
+                        }
+                        break;
+                    case "--concurrency":
+                        concurrency = Integer.parseInt(args[++i]);
+                        break;
+                    case "--openings":
+                        openingMoves = Integer.parseInt(args[++i]);
+                        break;
+                    case "--plies":
+                        plies = Integer.parseInt(args[++i]);
+                        break;
+                    case "--min-games":
+                        minGames = Integer.parseInt(args[++i]);
+                        break;
+                    case "--size":
+                        size = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java loa.BookBuilder [--out path] [--games n] [--records path]"
+                    + " [--engine name=value,...] [--concurrency n] [--openings n] [--plies n]"
+                    + " [--min-games n] [--size n] [--seed n]");
+            System.exit(2);
+        }
+
+        Geometry geometry = Geometry.of(size);
+        BookBuilder builder = new BookBuilder(geometry, plies);
+        for (Path path : records) {
+            System.out.println("Added " + builder.addRecords(path) + " games from " + path);
+        }
+
+        if (games > 0) {
+            // The book is built from scratch, so the engine plays without one
+            config.setBook("");
+            Tournament tournament = new Tournament(config, config, geometry);
+            tournament.setOpeningMoves(openingMoves);
+            tournament.setSeed(seed);
+            tournament.setListener(result -> builder.add(result.getMoves(), result.getWinner()));
+
+            Tournament.Score score = tournament.run(games, concurrency);
+            System.out.println("Played " + score.getGames() + " games");
+        }
+
+        int positions = builder.write(out, minGames);
+        System.out.println("Wrote " + positions + " positions to " + out);
+    }
+}
@@ -0,0 +1,278 @@
+package loa;
+
+/**
+ * Settings of the engine behind {@link MachinePlayer}.
+ * <p>
+ * The defaults can be overridden on the command line with system
+ * properties, e.g. {@code -Dloa.hash=64}.
+ */
+public class EngineConfig {
+    /** Size of the transposition table in megabytes. */
+    private int hashSizeMb = 16;
+
+    /** Deepest iteration the search runs. */
+    private int maxDepth = Search.MAX_PLY;
+
+    /** Time budget of a move in milliseconds, or 0 for none. */
+    private long moveTimeMs = 1000;
+
+    /** Node budget of a move, or 0 for none. */
+    private long nodeLimit = 0;
+
+    /** Number of threads searching each move. */
+    private int threads = 1;
+
+    /** Whether moves after the first are searched with a null window first. */
+    private boolean principalVariationSearch = true;
+
+    /** Half-width of the root window around the previous score, or 0 for a full window. */
+    private int aspirationWindow = 50;
+
+    /** Deepest run of captures searched past the horizon, or 0 for none. */
+    private int quiescenceDepth = 8;
+
+    /** Whether the engine keeps searching while the human thinks. */
+    private boolean ponder = false;
+
+    /** Path of the opening book file, or empty for none. */
+    private String book = "";
+
+    /** Path of the endgame tablebase file, or empty for none. */
+    private String tablebase = "";
+
+    /** Path of the evaluation weights file, or empty for the default weights. */
+    private String weights = "";
+
+    /** Whether the counters of the engine are shown over JMX. */
+    private boolean telemetry = false;
+
+    /** Search behind the engine: "alphabeta" or "mcts". */
+    private String engine = "alphabeta";
+
+    /** Size of the Monte Carlo search tree in megabytes. */
+    private int treeSizeMb = 64;
+
+    public int getHashSizeMb() {
+        return hashSizeMb;
+    }
+
+    public void setHashSizeMb(int hashSizeMb) {
+        this.hashSizeMb = hashSizeMb;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public long getMoveTimeMs() {
+        return moveTimeMs;
+    }
+
+    public void setMoveTimeMs(long moveTimeMs) {
+        this.moveTimeMs = moveTimeMs;
+    }
+
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isPrincipalVariationSearch() {
+        return principalVariationSearch;
+    }
+
+    public void setPrincipalVariationSearch(boolean principalVariationSearch) {
+        this.principalVariationSearch = principalVariationSearch;
+    }
+
+    public int getAspirationWindow() {
+        return aspirationWindow;
+    }
+
+    public void setAspirationWindow(int aspirationWindow) {
+        this.aspirationWindow = aspirationWindow;
+    }
+
+    public int getQuiescenceDepth() {
+        return quiescenceDepth;
+    }
+
+    public void setQuiescenceDepth(int quiescenceDepth) {
+        this.quiescenceDepth = quiescenceDepth;
+    }
+
+    public boolean isPonder() {
+        return ponder;
+    }
+
+    public void setPonder(boolean ponder) {
+        this.ponder = ponder;
+    }
+
+    public String getBook() {
+        return book;
+    }
+
+    public void setBook(String book) {
+        this.book = book;
+    }
+
+    public String getTablebase() {
+        return tablebase;
+    }
+
+    public void setTablebase(String tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public String getWeights() {
+        return weights;
+    }
+
+    public void setWeights(String weights) {
+        this.weights = weights;
+    }
+
+    public boolean isTelemetry() {
+        return telemetry;
+    }
+
+    public void setTelemetry(boolean telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the engine is neither
+     *         "alphabeta" nor "mcts"
+     */
+    public void setEngine(String engine) {
+        if (!engine.equals("alphabeta") && !engine.equals("mcts")) {
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Checks if the engine is the Monte Carlo search.
+     */
+    public boolean isMcts() {
+        return engine.equals("mcts");
+    }
+
+    public int getTreeSizeMb() {
+        return treeSizeMb;
+    }
+
+    public void setTreeSizeMb(int treeSizeMb) {
+        this.treeSizeMb = treeSizeMb;
+    }
+
+    /**
+     * Changes a setting by the name of its system property, without the
+     * {@code loa.} prefix, e.g. {@code set("hash", "64")}.
+     *
+     * @param name the name of the setting
+     * @param value the new value
+     * @throws IllegalArgumentException if there is no such setting or the
+     *         value is not a number or engine where one is expected
+     */
+    public void set(String name, String value) {
+        switch (name) {
+            case "hash":
+                setHashSizeMb(Integer.parseInt(value));
+                break;
+            case "depth":
+                setMaxDepth(Integer.parseInt(value));
+                break;
+            case "movetime":
+                setMoveTimeMs(Long.parseLong(value));
+                break;
+            case "nodes":
+                setNodeLimit(Long.parseLong(value));
+                break;
+            case "threads":
+                setThreads(Integer.parseInt(value));
+                break;
+            case "pvs":
+                setPrincipalVariationSearch(Boolean.parseBoolean(value));
+                break;
+            case "aspiration":
+                setAspirationWindow(Integer.parseInt(value));
+                break;
+            case "qdepth":
+                setQuiescenceDepth(Integer.parseInt(value));
+                break;
+            case "ponder":
+                setPonder(Boolean.parseBoolean(value));
+                break;
+            case "book":
+                setBook(value);
+                break;
+            case "tablebase":
+                setTablebase(value);
+                break;
+            case "weights":
+                setWeights(value);
+                break;
+            case "telemetry":
+                setTelemetry(Boolean.parseBoolean(value));
+                break;
+            case "engine":
+                setEngine(value);
+                break;
+            case "tree":
+                setTreeSizeMb(Integer.parseInt(value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine setting: " + name);
+        }
+    }
+
+    /**
+     * Returns the default settings, overridden by any system properties given.
+     *
+     * @return the settings of the engine
+     */
+    public static EngineConfig fromSystemProperties() {
+        EngineConfig config = new EngineConfig();
+        config.setHashSizeMb(Integer.getInteger("loa.hash", config.getHashSizeMb()));
+        config.setMaxDepth(Integer.getInteger("loa.depth", config.getMaxDepth()));
+        config.setMoveTimeMs(Long.getLong("loa.movetime", config.getMoveTimeMs()));
+        config.setNodeLimit(Long.getLong("loa.nodes", config.getNodeLimit()));
+        config.setThreads(Integer.getInteger("loa.threads", config.getThreads()));
+        config.setPrincipalVariationSearch(Boolean.parseBoolean(
+                System.getProperty("loa.pvs", String.valueOf(config.isPrincipalVariationSearch()))));
+        config.setAspirationWindow(Integer.getInteger("loa.aspiration", config.getAspirationWindow()));
+        config.setQuiescenceDepth(Integer.getInteger("loa.qdepth", config.getQuiescenceDepth()));
+        config.setPonder(Boolean.parseBoolean(
+                System.getProperty("loa.ponder", String.valueOf(config.isPonder()))));
+        config.setBook(System.getProperty("loa.book", config.getBook()));
+        config.setTablebase(System.getProperty("loa.tablebase", config.getTablebase()));
+        config.setWeights(System.getProperty("loa.weights", config.getWeights()));
+        config.setTelemetry(Boolean.parseBoolean(
+                System.getProperty("loa.telemetry", String.valueOf(config.isTelemetry()))));
+        config.setEngine(System.getProperty("loa.engine", config.getEngine()));
+        config.setTreeSizeMb(Integer.getInteger("loa.tree", config.getTreeSizeMb()));
+
+        return config;
+    }
+}
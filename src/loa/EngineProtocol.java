@@ -0,0 +1,434 @@
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drives the engine with text commands on standard input, one per line,
+ * without the GUI, much like UCI does for chess engines.
+ * <p>
+ * The commands are
+ * <ul>
+ *     <li>{@code uci}: prints the name of the engine and its options, then
+ *     {@code uciok}</li>
+ *     <li>{@code isready}: prints {@code readyok} once the engine is built
+ *     with the options set</li>
+ *     <li>{@code setoption name n value v}: changes a setting, by the
+ *     names of {@link EngineConfig#set}</li>
+ *     <li>{@code ucinewgame}: forgets what earlier searches found</li>
+ *     <li>{@code position startpos [size n] [moves m...]} or
+ *     {@code position board tiles side [moves m...]}: sets the position,
+ *     the latter as {@link Board#parse} reads it, with moves as
+ *     {@link Move#toString(int)} writes them</li>
+ *     <li>{@code go [depth n] [movetime ms] [nodes n] [infinite]}: searches
+ *     the position in the background, under the limits given, or those of
+ *     the settings if none are; the book and the tablebase are used unless
+ *     the search is infinite</li>
+ *     <li>{@code stop}: ends the search</li>
+ *     <li>{@code d}: prints the position</li>
+ *     <li>{@code quit}: ends the search and the program</li>
+ * </ul>
+ * While the alpha-beta search runs it prints
+ * {@code info depth d score s nodes n nps n time ms pv m...} after every
+ * iteration, the score as {@code cp n}, or {@code win n} or {@code loss n}
+ * with the number of plies to the end of the game, for the side to move.
+ * The Monte Carlo search prints one info line at the end.
+ * Every search ends with {@code bestmove m}, or {@code bestmove none} if
+ * there is no legal move. Errors are reported as {@code info string}
+ * lines, and the command is ignored.
+ * <p>
+ * The commands that change the settings or the position, and {@code go},
+ * wait for the running search to finish, so a script of commands can be
+ * piped in as it is; an infinite search only finishes on {@code stop}.
+ * <p>
+ * Usage: {@code java loa.EngineProtocol}; the settings start from the
+ * system properties.
+ */
+public final class EngineProtocol {
+    private final EngineConfig config;
+    private final PrintStream out;
+
+    /** Runs the searches, one at a time. */
+    private final ExecutorService engine = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "loa-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Board position = Board.initial();
+
+    /*
+     * The engine, built from the settings on the first command that needs
+     * it and again when a setting it was built with changes.
+     */
+    private boolean stale = true;
+    private TranspositionTable table;
+    private ParallelSearch search;
+    private MctsSearch mcts;
+    private OpeningBook book;
+    private Tablebase tablebase;
+
+    private Future<?> running;
+
+    /** The limits of the search started last, made before it is submitted. */
+    private SearchBudget budget;
+
+    /**
+     * @param config the settings of the engine
+     * @param out where the replies go
+     */
+    public EngineProtocol(EngineConfig config, PrintStream out) {
+        this.config = config;
+        this.out = out;
+    }
+
+    /**
+     * Reads and runs commands until {@code quit} or the end of the input.
+     *
+     * @param in the commands
+     * @throws IOException if the commands cannot be read
+     */
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!execute(line.trim())) break;
+        }
+
+        stop();
+        engine.shutdownNow();
+        if (search != null) search.shutdown();
+        if (mcts != null) mcts.shutdown();
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @param line the command
+     * @return false if the command was {@code quit}
+     */
+    public boolean execute(String line) {
+        String[] tokens = line.split("\\s+");
+        try {
+            switch (tokens[0]) {
+                case "":
+                    break;
+                case "uci":
+                    send("id name loa");
+                    for (String option : new String[] { "hash", "depth", "movetime", "nodes", "threads", "pvs",
+                            "aspiration", "qdepth", "book", "tablebase", "weights", "engine", "tree" }) {
+                        send("option name " + option + " type string");
+                    }
+                    send("uciok");
+                    break;
+                case "isready":
+                    if (!isSearching()) build();
+                    send("readyok");
+                    break;
+                case "setoption":
+                    await();
+                    setOption(tokens);
+                    break;
+                case "ucinewgame":
+                    await();
+                    if (table != null) table.clear();
+                    break;
+                case "position":
+                    await();
+                    position = parsePosition(tokens);
+                    break;
+                case "go":
+                    await();
+                    go(tokens);
+                    break;
+                case "stop":
+                    stop();
+                    break;
+                case "d":
+                    send("info string " + position);
+                    break;
+                case "quit":
+                    return false;
+                default:
+                    send("info string Unknown command: " + tokens[0]);
+                    break;
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            send("info string Bad command: " + line + (e.getMessage() != null ? " (" + e.getMessage() + ")" : ""));
+        }
+
+        return true;
+    }
+
+    private void setOption(String[] tokens) {
+        int name = indexOf(tokens, "name");
+        int value = indexOf(tokens, "value");
+        if (name < 0 || value < name + 2) {
+            throw new IllegalArgumentException("expected name and value");
+        }
+
+        String option = String.join(" ", Arrays.copyOfRange(tokens, name + 1, value)).toLowerCase();
+        String setting = String.join(" ", Arrays.copyOfRange(tokens, value + 1, tokens.length));
+        config.set(option, setting);
+
+        // These are read when the engine is built, the others on every search
+        switch (option) {
+            case "hash":
+            case "threads":
+            case "weights":
+            case "book":
+            case "tablebase":
+            case "engine":
+            case "tree":
+                stale = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Board parsePosition(String[] tokens) {
+        int i = 1;
+        Board board;
+        if (tokens[i].equals("startpos")) {
+            i++;
+            int size = Geometry.DEFAULT_SIZE;
+            if (i < tokens.length && tokens[i].equals("size")) {
+                size = Integer.parseInt(tokens[i + 1]);
+                i += 2;
+            }
+            board = Board.initial(Geometry.of(size));
+        } else if (tokens[i].equals("board")) {
+            board = Board.parse(tokens[i + 1] + " " + tokens[i + 2]);
+            i += 3;
+        } else {
+            throw new IllegalArgumentException("expected startpos or board");
+        }
+
+        if (i < tokens.length) {
+            if (!tokens[i].equals("moves")) {
+                throw new IllegalArgumentException("expected moves");
+            }
+            for (i++; i < tokens.length; i++) {
+                int move = Move.parse(board, tokens[i]);
+                if (move == Move.NONE) {
+                    throw new IllegalArgumentException("illegal move " + tokens[i]);
+                }
+                board.makeMove(Move.from(move), Move.to(move));
+            }
+        }
+
+        return board;
+    }
+
+    private void go(String[] tokens) {
+        int depth = config.getMaxDepth();
+        long timeMs = config.getMoveTimeMs();
+        long nodes = config.getNodeLimit();
+        boolean infinite = false;
+
+        // Any limit given replaces all those of the settings
+        if (tokens.length > 1) {
+            depth = Search.MAX_PLY;
+            timeMs = 0;
+            nodes = 0;
+        }
+        for (int i = 1; i < tokens.length; i++) {
+            switch (tokens[i]) {
+                case "depth":
+                    depth = Integer.parseInt(tokens[++i]);
+                    break;
+                case "movetime":
+                    timeMs = Long.parseLong(tokens[++i]);
+                    break;
+                case "nodes":
+                    nodes = Long.parseLong(tokens[++i]);
+                    break;
+                case "infinite":
+                    infinite = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown limit " + tokens[i]);
+            }
+        }
+
+        build();
+        Board board = new Board(position);
+        int maxDepth = depth;
+        SearchBudget limits = new SearchBudget(timeMs, infinite && mcts != null ? Long.MAX_VALUE : nodes);
+        boolean probe = !infinite;
+        budget = limits;
+        running = engine.submit(() -> {
+            int move = Move.NONE;
+            try {
+                move = probe ? probe(board) : Move.NONE;
+                if (move == Move.NONE) {
+                    move = think(board, maxDepth, limits);
+                }
+            } catch (RuntimeException e) {
+                send("info string Search failed: " + e);
+            }
+            send("bestmove " + (move == Move.NONE ? "none" : Move.toString(move)));
+        });
+    }
+
+    /**
+     * Returns the move of the book or the tablebase, or Move.NONE.
+     */
+    private int probe(Board board) {
+        if (book != null) {
+            int move = book.probe(board);
+            if (move != Move.NONE) {
+                send("info string book");
+                return move;
+            }
+        }
+        if (tablebase != null) {
+            int move = tablebase.bestMove(board);
+            if (move != Move.NONE) {
+                send("info string tablebase");
+                return move;
+            }
+        }
+
+        return Move.NONE;
+    }
+
+    private int think(Board board, int maxDepth, SearchBudget limits) {
+        if (mcts != null) {
+            long start = System.nanoTime();
+            int move = mcts.run(board, limits);
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            send("info playouts " + mcts.getPlayouts() + " tree " + mcts.getTreeSize()
+                    + " pps " + (long) (mcts.getPlayouts() * 1e9 / elapsed) + " time " + elapsed / 1_000_000);
+            return move;
+        }
+
+        table.newSearch();
+        return search.run(board, maxDepth, limits);
+    }
+
+    /**
+     * Prints the info line of the iteration just completed.
+     */
+    private void info() {
+        Search main = search.getMain();
+        int score = main.getBestScore();
+        StringBuilder line = new StringBuilder("info depth ").append(main.getCompletedDepth());
+        line.append(" score ").append(score >= Search.MIN_WIN ? "win " + (Search.WIN - score)
+                : score <= -Search.MIN_WIN ? "loss " + (Search.WIN + score) : "cp " + score);
+        line.append(" nodes ").append(search.getNodes());
+        line.append(" nps ").append(search.getNodesPerSecond());
+        line.append(" time ").append(search.getElapsedNanos() / 1_000_000);
+        line.append(" pv");
+        for (int move : main.getPv()) {
+            line.append(' ').append(Move.toString(move));
+        }
+        send(line.toString());
+    }
+
+    /**
+     * Builds the engine from the settings, if it is not built or a setting
+     * it was built with has changed. Files that cannot be read are
+     * reported and left out.
+     */
+    private void build() {
+        if (!stale) return;
+
+        int[] weights = Evaluator.defaultWeights();
+        if (!config.getWeights().isEmpty()) {
+            try {
+                weights = Evaluator.readWeights(Path.of(config.getWeights()));
+            } catch (IOException e) {
+                send("info string Cannot read the evaluation weights " + config.getWeights() + ": " + e.getMessage());
+            }
+        }
+        book = null;
+        if (!config.getBook().isEmpty()) {
+            try {
+                book = OpeningBook.open(Path.of(config.getBook()));
+            } catch (IOException e) {
+                send("info string Cannot open the opening book " + config.getBook() + ": " + e.getMessage());
+            }
+        }
+        tablebase = null;
+        if (!config.getTablebase().isEmpty()) {
+            try {
+                tablebase = Tablebase.open(Path.of(config.getTablebase()));
+            } catch (IOException e) {
+                send("info string Cannot open the tablebase " + config.getTablebase() + ": " + e.getMessage());
+            }
+        }
+
+        // The old searches let their threads go, so they and the table can be collected
+        if (search != null) search.shutdown();
+        if (mcts != null) mcts.shutdown();
+        mcts = config.isMcts() ? new MctsSearch(config) : null;
+        table = mcts == null ? new TranspositionTable(config.getHashSizeMb()) : null;
+        search = mcts == null ? new ParallelSearch(table, config, weights) : null;
+        if (search != null) {
+            search.getMain().setIterationListener(this::info);
+        }
+        stale = false;
+    }
+
+    private boolean isSearching() {
+        return running != null && !running.isDone();
+    }
+
+    /**
+     * Waits for the running search, if any, to finish.
+     */
+    private void await() {
+        if (running == null) return;
+
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Reported by the search itself
+        }
+    }
+
+    /**
+     * Ends the search, if one is running, and waits for its best move.
+     */
+    private void stop() {
+        if (budget != null) budget.stop();
+        await();
+    }
+
+    private static int indexOf(String[] tokens, String token) {
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].equals(token)) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Prints a reply at once; replies come from both the command and the
+     * search thread.
+     */
+    private synchronized void send(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false, StandardCharsets.UTF_8);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        new EngineProtocol(EngineConfig.fromSystemProperties(), out).run(in);
+        out.flush();
+    }
+}
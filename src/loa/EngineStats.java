@@ -0,0 +1,118 @@
+package loa;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Shows the counters of a {@link ParallelSearch} and its transposition
+ * table over JMX, so a long analysis can be watched from a tool such as
+ * JConsole while it runs.
+ * <p>
+ * Nothing is counted for it: every attribute is read from the search
+ * when asked for, so an engine that is not registered pays nothing.
+ */
+public class EngineStats implements EngineStatsMBean {
+    private final ParallelSearch search;
+
+    public EngineStats(ParallelSearch search) {
+        this.search = search;
+    }
+
+    /**
+     * Registers the counters of a search with the platform MBean server,
+     * as {@code loa:type=Engine,name=<name>}, replacing any registered
+     * under the same name.
+     *
+     * @param name the name of the engine
+     * @param search the search of the engine
+     * @return the name the counters are registered under
+     * @throws IllegalStateException if they cannot be registered
+     */
+    public static ObjectName register(String name, ParallelSearch search) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("loa:type=Engine,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new EngineStats(search), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register the engine counters of " + name, e);
+        }
+    }
+
+    @Override
+    public boolean isSearching() {
+        return search.isSearching();
+    }
+
+    @Override
+    public long getSearches() {
+        return search.getSearches();
+    }
+
+    @Override
+    public int getDepth() {
+        return search.getMain().getCompletedDepth();
+    }
+
+    @Override
+    public long getNodes() {
+        return search.getNodes();
+    }
+
+    @Override
+    public long getNodesPerSecond() {
+        return search.getNodesPerSecond();
+    }
+
+    @Override
+    public long getElapsedMs() {
+        return search.getElapsedNanos() / 1_000_000;
+    }
+
+    @Override
+    public double getBranchingFactor() {
+        return search.getMain().getBranchingFactor();
+    }
+
+    @Override
+    public double getCutoffRate() {
+        return search.getCutoffRate();
+    }
+
+    @Override
+    public double getFirstMoveCutoffRate() {
+        return search.getFirstMoveCutoffRate();
+    }
+
+    @Override
+    public long getTotalNodes() {
+        return search.getTotalNodes();
+    }
+
+    @Override
+    public long getTableHits() {
+        return search.getTable().getHits();
+    }
+
+    @Override
+    public long getTableMisses() {
+        return search.getTable().getMisses();
+    }
+
+    @Override
+    public long getTableCollisions() {
+        return search.getTable().getCollisions();
+    }
+
+    @Override
+    public double getTableHitRate() {
+        long hits = getTableHits();
+        long probes = hits + getTableMisses();
+        return probes > 0 ? (double) hits / probes : 0;
+    }
+}
@@ -0,0 +1,44 @@
+package loa;
+
+/**
+ * Live counters of an engine, as shown over JMX by {@link EngineStats}.
+ * <p>
+ * The counters of a search are those of the one running, or of the last
+ * one if none is.
+ */
+public interface EngineStatsMBean {
+    boolean isSearching();
+
+    long getSearches();
+
+    /** Depth of the last completed iteration of the search. */
+    int getDepth();
+
+    /** Nodes of the search, capture nodes included, by all threads. */
+    long getNodes();
+
+    long getNodesPerSecond();
+
+    long getElapsedMs();
+
+    /** Nodes of the last completed iteration over those of the one before. */
+    double getBranchingFactor();
+
+    /** Beta cutoffs per node before the horizon. */
+    double getCutoffRate();
+
+    /** Share of the beta cutoffs made by the first move searched. */
+    double getFirstMoveCutoffRate();
+
+    /** Nodes of all the searches run, capture nodes included. */
+    long getTotalNodes();
+
+    long getTableHits();
+
+    long getTableMisses();
+
+    long getTableCollisions();
+
+    /** Share of the table probes that found the position. */
+    double getTableHitRate();
+}
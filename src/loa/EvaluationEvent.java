@@ -0,0 +1,54 @@
+package loa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The time the static evaluation of a search took, term by term,
+ * recorded by JDK Flight Recorder.
+ * <p>
+ * While the event is enabled, the main thread of the search times the
+ * terms of one evaluation in 64; the times here are scaled up to all the
+ * evaluations of the search.
+ */
+@Name("loa.Evaluation")
+@Label("Evaluation")
+@Category({ "Lines of Action", "Engine" })
+@Description("Time spent in each term of the static evaluation during a search")
+@StackTrace(false)
+final class EvaluationEvent extends Event {
+    @Label("Evaluations")
+    long evaluations;
+
+    @Label("Timed Evaluations")
+    long profiledEvaluations;
+
+    @Label("Weight")
+    @Timespan(Timespan.NANOSECONDS)
+    long weight;
+
+    @Label("Density")
+    @Timespan(Timespan.NANOSECONDS)
+    long density;
+
+    @Label("Area")
+    @Timespan(Timespan.NANOSECONDS)
+    long area;
+
+    @Label("Mobility")
+    @Timespan(Timespan.NANOSECONDS)
+    long mobility;
+
+    @Label("Connectedness")
+    @Timespan(Timespan.NANOSECONDS)
+    long connectedness;
+
+    @Label("Quads")
+    @Timespan(Timespan.NANOSECONDS)
+    long quads;
+}
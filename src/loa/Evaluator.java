@@ -0,0 +1,285 @@
+package loa;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Heuristic evaluation of game positions for the search.
+ * <p>
+ * The piece-square weights, the centre of mass and the crowded quads are
+ * read from sums the {@link Board} keeps up to date as moves are made, so
+ * no term needs a scan over the tiles. The other terms are worked out on
+ * the occupancy masks.
+ * <p>
+ * Each term has a weight, +1 or -1 unless read from a weights file, such
+ * as the ones {@link WeightTuner} writes.
+ */
+public class Evaluator {
+    /**
+     * Table for determining weight of tile position, on an 8x8 board.
+     * Smaller boards take the middle of it.
+     */
+    public static final int[][] pieceSquareTable = {
+            { -80, -25, -20, -20, -20, -20, -25, -80 },
+            { -25,  10,  10,  10,  10,  10,  10, -25 },
+            { -20,  10,  25,  25,  25,  25,  10, -20 },
+            { -20,  10,  25,  50,  50,  25,  10, -20 },
+            { -20,  10,  25,  50,  50,  25,  10, -20 },
+            { -20,  10,  25,  25,  25,  25,  10, -20 },
+            { -25,  10,  10,  10,  10,  10,  10, -25 },
+            { -80, -25, -20, -20, -20, -20, -25, -80 }
+    };
+
+    /** Mask of the squares in the first col. */
+    private static final long FIRST_COL = 0xFFL;
+
+    /** Names of the terms of the score, in the order of their weights. */
+    public static final String[] TERMS = { "weight", "density", "area", "mobility", "connectedness", "quads" };
+
+    /** Weights of the terms used when none are given. */
+    private static final int[] DEFAULT_WEIGHTS = { 1, -1, -1, 1, 1, 1 };
+
+    private final int weightOfWeight;
+    private final int weightOfDensity;
+    private final int weightOfArea;
+    private final int weightOfMobility;
+    private final int weightOfConnectedness;
+    private final int weightOfQuadCount;
+
+    public Evaluator() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    /**
+     * Creates an evaluator with its own weights.
+     *
+     * @param weights the weight of every term, in the order of TERMS
+     */
+    public Evaluator(int[] weights) {
+        weightOfWeight = weights[0];
+        weightOfDensity = weights[1];
+        weightOfArea = weights[2];
+        weightOfMobility = weights[3];
+        weightOfConnectedness = weights[4];
+        weightOfQuadCount = weights[5];
+    }
+
+    /**
+     * Returns a copy of the weights used when none are given.
+     */
+    public static int[] defaultWeights() {
+        return DEFAULT_WEIGHTS.clone();
+    }
+
+    /**
+     * Returns the weights of the terms, in the order of TERMS.
+     */
+    public int[] getWeights() {
+        return new int[] { weightOfWeight, weightOfDensity, weightOfArea,
+                weightOfMobility, weightOfConnectedness, weightOfQuadCount };
+    }
+
+    /**
+     * Reads a weights file: a properties file with a weight for some of
+     * the terms, by name. The terms left out keep their default weight.
+     *
+     * @param path the weights file
+     * @return the weight of every term, in the order of TERMS
+     * @throws IOException if the file cannot be read or has a bad entry
+     */
+    public static int[] readWeights(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+
+        int[] weights = defaultWeights();
+        for (String name : properties.stringPropertyNames()) {
+            int term = Arrays.asList(TERMS).indexOf(name);
+            if (term < 0) {
+                throw new IOException("Unknown term " + name + " in " + path);
+            }
+            try {
+                weights[term] = Integer.parseInt(properties.getProperty(name).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Not a weight for " + name + " in " + path, e);
+            }
+        }
+
+        return weights;
+    }
+
+    /**
+     * Writes a weights file that {@link #readWeights} reads back.
+     *
+     * @param path the weights file, replaced if it exists
+     * @param weights the weight of every term, in the order of TERMS
+     * @param comment a line written at the top of the file
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeWeights(Path path, int[] weights, String comment) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("# " + comment);
+            writer.newLine();
+            for (int term = 0; term < TERMS.length; term++) {
+                writer.write(TERMS[term] + "=" + weights[term]);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns a heuristic score of the game state.
+     *
+     * @param board the game position
+     * @param side the side for which the score is to be calculated
+     * @return the heuristic score of the game state
+     */
+    public int getScore(Board board, PieceType side) {
+        return weightOfWeight * getTotalWeight(board, side)
+                + weightOfDensity * getDensityScore(board, side)
+                + weightOfArea * getArea(board, side)
+                + weightOfMobility * getMobility(board, side)
+                + weightOfConnectedness * getConnectedness(board, side)
+                + weightOfQuadCount * getQuadCount(board, side);
+    }
+
+    /**
+     * Returns a heuristic score of the game state, timing every term.
+     *
+     * @param board the game position
+     * @param side the side for which the score is to be calculated
+     * @param termNanos the nanoseconds of every term are added to it, in
+     *                  the order of TERMS
+     * @return the heuristic score of the game state
+     */
+    public int getScore(Board board, PieceType side, long[] termNanos) {
+        long start = System.nanoTime();
+        int weight = getTotalWeight(board, side);
+        long afterWeight = System.nanoTime();
+        int density = getDensityScore(board, side);
+        long afterDensity = System.nanoTime();
+        int area = getArea(board, side);
+        long afterArea = System.nanoTime();
+        int mobility = getMobility(board, side);
+        long afterMobility = System.nanoTime();
+        int connectedness = getConnectedness(board, side);
+        long afterConnectedness = System.nanoTime();
+        int quads = getQuadCount(board, side);
+        long end = System.nanoTime();
+
+        termNanos[0] += afterWeight - start;
+        termNanos[1] += afterDensity - afterWeight;
+        termNanos[2] += afterArea - afterDensity;
+        termNanos[3] += afterMobility - afterArea;
+        termNanos[4] += afterConnectedness - afterMobility;
+        termNanos[5] += end - afterConnectedness;
+
+        return weightOfWeight * weight + weightOfDensity * density + weightOfArea * area
+                + weightOfMobility * mobility + weightOfConnectedness * connectedness
+                + weightOfQuadCount * quads;
+    }
+
+    /**
+     * Works out every term of the score without its weight.
+     *
+     * @param board the game position
+     * @param side the side for which the terms are to be calculated
+     * @param terms filled with the terms, in the order of TERMS
+     */
+    public void getTerms(Board board, PieceType side, int[] terms) {
+        terms[0] = getTotalWeight(board, side);
+        terms[1] = getDensityScore(board, side);
+        terms[2] = getArea(board, side);
+        terms[3] = getMobility(board, side);
+        terms[4] = getConnectedness(board, side);
+        terms[5] = getQuadCount(board, side);
+    }
+
+    int getTotalWeight(Board board, PieceType side) {
+        return board.getWeight(side);
+    }
+
+    /**
+     * Returns the square nearest to the centre of mass, rounded towards
+     * the first col and row.
+     */
+    private int getCenterOfMass(Board board, PieceType side) {
+        int count = board.count(side);
+        return Board.square(board.getXSum(side) / count, board.getYSum(side) / count);
+    }
+
+    /**
+     * Returns the sum of the distances of the pieces from their centre of
+     * mass, each rounded down.
+     */
+    int getDensityScore(Board board, PieceType side) {
+        Geometry geometry = board.getGeometry();
+        long[] ring = geometry.ring;
+        int rings = geometry.rings;
+        long pcs = board.getPieces(side);
+        int base = getCenterOfMass(board, side) * rings;
+        int d = 0;
+
+        for (int r = 1; r < rings; r++) {
+            d += r * Long.bitCount(pcs & ring[base + r]);
+        }
+
+        return d;
+    }
+
+    /**
+     * Returns the area of the smallest rectangle around the pieces,
+     * measured between the centres of the outer tiles.
+     */
+    int getArea(Board board, PieceType side) {
+        long pcs = board.getPieces(side);
+
+        int fx = Board.colOf(Long.numberOfTrailingZeros(pcs));
+        int lx = Board.colOf(63 - Long.numberOfLeadingZeros(pcs));
+
+        // Fold the cols onto the first one to find the rows in use
+        long rows = pcs | pcs >>> 32;
+        rows |= rows >>> 16;
+        rows |= rows >>> 8;
+        rows &= FIRST_COL;
+        int fy = Long.numberOfTrailingZeros(rows);
+        int ly = 63 - Long.numberOfLeadingZeros(rows);
+
+        return (lx - fx) * (ly - fy);
+    }
+
+    /**
+     * Returns the number of moves of the pieces, piece by piece, skipping
+     * a piece whose targets were all counted for an earlier one.
+     */
+    int getMobility(Board board, PieceType side) {
+        long own = board.getPieces(side);
+        long opp = board.getPieces(Board.opponent(side));
+        long seen = 0;
+        int size = 0;
+
+        for (long pcs = own; pcs != 0; pcs &= pcs - 1) {
+            long targets = MoveGenerator.pieceTargets(board, Long.numberOfTrailingZeros(pcs), own, opp);
+            if ((targets & ~seen) != 0) {
+                size += Long.bitCount(targets);
+                seen |= targets;
+            }
+        }
+
+        return size;
+    }
+
+    int getConnectedness(Board board, PieceType side) {
+        return board.largestGroup(side);
+    }
+
+    int getQuadCount(Board board, PieceType side) {
+        return board.getCrowd(side);
+    }
+}
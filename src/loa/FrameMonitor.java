@@ -0,0 +1,46 @@
+package loa;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Logs how long the JavaFX Application Thread takes between frames.
+ * <p>
+ * Once a second it prints the number of frames drawn and the longest gap
+ * between two of them; a long gap means the thread was busy and the window
+ * did not respond. Turned on with {@code -Dloa.frames=true}. For the pulses
+ * themselves, JavaFX has {@code -Djavafx.pulseLogger=true}.
+ */
+public class FrameMonitor extends AnimationTimer {
+    /** Gap between frames above which a frame is counted as slow. */
+    private static final long SLOW_FRAME_NS = 50_000_000;
+
+    private long last;
+    private long windowStart;
+    private long longest;
+    private int frames;
+    private int slowFrames;
+
+    @Override
+    public void handle(long now) {
+        if (last == 0) {
+            last = now;
+            windowStart = now;
+            return;
+        }
+
+        long gap = now - last;
+        last = now;
+        frames++;
+        longest = Math.max(longest, gap);
+        if (gap > SLOW_FRAME_NS) slowFrames++;
+
+        if (now - windowStart >= 1_000_000_000) {
+            System.out.printf("FRAME: %d frames, longest %.1f ms, %d slow%n",
+                    frames, longest / 1e6, slowFrames);
+            windowStart = now;
+            longest = 0;
+            frames = 0;
+            slowFrames = 0;
+        }
+    }
+}
@@ -5,16 +5,24 @@ import javafx.scene.Scene;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
+import javafx.scene.control.TextInputDialog;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public class Game extends Application {
     public static final int TILE_SIZE = 80;
-    public static final int TILES = 6;
+
+    private GameUtil util;
 
     public void start(Stage primaryStage) {
-        GameUtil util = new GameUtil();
+        util = new GameUtil(Geometry.of(Integer.getInteger("loa.size", Geometry.DEFAULT_SIZE)));
         Player player1 = new HumanPlayer(util);
         Player player2 = null;
 
@@ -28,9 +36,11 @@ public class Game extends Application {
         ButtonType type = new ButtonType("Cancel", ButtonBar.ButtonData.CANCEL_CLOSE);
         ButtonType typeHuman = new ButtonType("Human");
         ButtonType typeMachine = new ButtonType("Machine");
+        ButtonType typeMcts = new ButtonType("Monte Carlo");
+        ButtonType typeReplay = new ButtonType("Replay");
 
         // Add buttons to the dialog pane
-        dialog.getDialogPane().getButtonTypes().addAll(type, typeHuman, typeMachine);
+        dialog.getDialogPane().getButtonTypes().addAll(type, typeHuman, typeMachine, typeMcts, typeReplay);
 
         // Display the dialog box and take input
         Optional<ButtonType> result = dialog.showAndWait();
@@ -38,6 +48,13 @@ public class Game extends Application {
             player2 = new HumanPlayer(util);
         } else if (result.orElseThrow() == typeMachine) {
             player2 = new MachinePlayer(util);
+        } else if (result.orElseThrow() == typeMcts) {
+            EngineConfig config = EngineConfig.fromSystemProperties();
+            config.setEngine("mcts");
+            player2 = new MachinePlayer(util, config);
+        } else if (result.orElseThrow() == typeReplay) {
+            replay(primaryStage);
+            return;
         } else if (result.orElseThrow() == type) {
             return;
         }
@@ -49,7 +66,61 @@ public class Game extends Application {
         primaryStage.setTitle("Lines of Action");
         primaryStage.setScene(scene);
         primaryStage.show();
+
+        if (Boolean.getBoolean("loa.frames")) {
+            new FrameMonitor().start();
+        }
+    }
+
+    /**
+     * Asks for a binary record file and the number of a game in it, and
+     * shows that game to step through.
+     */
+    private void replay(Stage primaryStage) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Game records");
+        File parent = Path.of(System.getProperty("loa.record", "games.bin")).toAbsolutePath().getParent().toFile();
+        if (parent.isDirectory()) {
+            chooser.setInitialDirectory(parent);
+        }
+        File file = chooser.showOpenDialog(primaryStage);
+        if (file == null) return;
+
+        TextInputDialog number = new TextInputDialog("1");
+        number.setTitle("Lines of Action");
+        number.setContentText("Game number:");
+        Optional<String> text = number.showAndWait();
+        if (text.isEmpty()) return;
+
+        GameRecord game;
+        try (Stream<GameRecord> games = GameRecords.stream(file.toPath())) {
+            long skip = Math.max(0, Long.parseLong(text.get().trim()) - 1);
+            game = games.skip(skip).findFirst().orElse(null);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Cannot read the game records " + file + ": " + e.getMessage());
+            return;
+        }
+        if (game == null) {
+            System.err.println("No game " + text.get().trim() + " in " + file);
+            return;
+        }
+
+        GameReplay replay = new GameReplay(game);
+        Scene scene = new Scene(replay.createContent());
+        scene.setOnKeyPressed(replay::handleKey);
+        replay.setOnStep(() -> primaryStage.setTitle(replay.getTitle()));
+        primaryStage.setTitle(replay.getTitle());
+        primaryStage.setScene(scene);
+        primaryStage.show();
     }
+
+    @Override
+    public void stop() {
+        if (util != null) {
+            util.shutdown();
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
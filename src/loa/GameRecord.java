@@ -0,0 +1,53 @@
+package loa;
+
+/**
+ * A game as kept in a record file: the size of the board, who played
+ * each side, how it ended and the moves from the starting position.
+ */
+public final class GameRecord {
+    private final int size;
+    private final String red;
+    private final String white;
+    private final PieceType winner;
+    private final int[] moves;
+
+    /**
+     * @param size the size of the board
+     * @param red the name of the player of red
+     * @param white the name of the player of white
+     * @param winner the side that won, NONE for a draw, or null if the
+     *               game was not finished
+     * @param moves the moves from the starting position
+     */
+    public GameRecord(int size, String red, String white, PieceType winner, int[] moves) {
+        this.size = size;
+        this.red = red;
+        this.white = white;
+        this.winner = winner;
+        this.moves = moves;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getRed() {
+        return red;
+    }
+
+    public String getWhite() {
+        return white;
+    }
+
+    /**
+     * Returns the side that won, NONE for a draw, or null if the game was
+     * not finished.
+     */
+    public PieceType getWinner() {
+        return winner;
+    }
+
+    public int[] getMoves() {
+        return moves;
+    }
+}
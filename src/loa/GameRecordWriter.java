@@ -0,0 +1,182 @@
+package loa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends games to a binary record file, in the format
+ * {@link GameRecords#stream} reads.
+ * <p>
+ * The games are gathered in a buffer and written when it fills up, or on
+ * {@link #flush} and {@link #close}. A writer is safe to use from several
+ * threads at once; every game goes to the file in one piece.
+ */
+public final class GameRecordWriter implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+    private GameRecordWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a record file for appending, creating it if it does not exist.
+     * A game cut short at the end of the file is dropped first, so the
+     * games added follow the last complete one.
+     *
+     * @param path the record file
+     * @return the writer
+     * @throws IOException if the file cannot be opened or is not a binary
+     *         record file
+     */
+    public static GameRecordWriter open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(GameRecords.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() == 0) {
+                header.putInt(GameRecords.MAGIC).putInt(GameRecords.VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            } else {
+                int read = 0;
+                while (header.hasRemaining() && read >= 0) {
+                    read = channel.read(header, header.position());
+                }
+                if (header.position() < GameRecords.HEADER_BYTES
+                        || header.getInt(0) != GameRecords.MAGIC || header.getInt(4) != GameRecords.VERSION) {
+                    throw new IOException("Not a binary game record file: " + path);
+                }
+                // A game cut short by a killed writer would garble every game after it
+                channel.truncate(end(channel));
+            }
+            channel.position(channel.size());
+
+            return new GameRecordWriter(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the end of the last complete game of a record file, or of
+     * the header if there is none.
+     */
+    private static long end(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer field = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+        long end = GameRecords.HEADER_BYTES;
+        while (true) {
+            // The board size, the result and the length of the name of red
+            long white = end + 3;
+            if (white > size) return end;
+            white += read(channel, field, end + 2, 1);
+
+            long plies = white + 1;
+            if (plies > size) return end;
+            plies += read(channel, field, white, 1);
+
+            long next = plies + 2;
+            if (next > size) return end;
+            next += read(channel, field, plies, 2);
+            if (next > size) return end;
+
+            end = next;
+        }
+    }
+
+    /**
+     * Reads an unsigned byte or short at a position known to be in the file.
+     */
+    private static int read(FileChannel channel, ByteBuffer field, long position, int bytes)
+            throws IOException {
+        field.clear().limit(bytes);
+        while (field.hasRemaining()) {
+            if (channel.read(field, position + field.position()) < 0) {
+                throw new IOException("Record file shrank while read");
+            }
+        }
+
+        return bytes == 1 ? field.get(0) & 0xFF : field.getShort(0) & 0xFFFF;
+    }
+
+    /**
+     * Adds a game.
+     *
+     * @param game the game
+     * @throws IOException if the buffer cannot be written out
+     * @throws IllegalArgumentException if a move of the game is illegal, a
+     *         name is longer than 255 bytes or the game longer than 65535
+     *         plies
+     */
+    public synchronized void write(GameRecord game) throws IOException {
+        byte[] red = game.getRed().getBytes(StandardCharsets.UTF_8);
+        byte[] white = game.getWhite().getBytes(StandardCharsets.UTF_8);
+        int[] played = game.getMoves();
+        if (red.length > 255 || white.length > 255 || played.length > 0xFFFF) {
+            throw new IllegalArgumentException("Game too large to record");
+        }
+
+        int bytes = 6 + red.length + white.length + played.length;
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        if (buffer.remaining() < bytes) {
+            throw new IllegalArgumentException("Game too large to record");
+        }
+
+        // Encoded before anything is put, so an illegal move leaves the buffer as it was
+        byte[] ordinals = new byte[played.length];
+        Board board = Board.initial(Geometry.of(game.getSize()));
+        for (int i = 0; i < played.length; i++) {
+            int count = MoveGenerator.generateMoves(board, moves, 0);
+            int k = 0;
+            while (k < count && moves[k] != played[i]) k++;
+            if (k == count) {
+                throw new IllegalArgumentException("Illegal move " + Move.toString(played[i]) + " at ply " + i);
+            }
+            ordinals[i] = (byte) k;
+            board.makeMove(Move.from(played[i]), Move.to(played[i]));
+        }
+
+        buffer.put((byte) game.getSize());
+        buffer.put((byte) GameRecords.resultCode(game.getWinner()));
+        buffer.put((byte) red.length).put(red);
+        buffer.put((byte) white.length).put(white);
+        buffer.putShort((short) played.length);
+        buffer.put(ordinals);
+    }
+
+    /**
+     * Writes the games in the buffer to the file.
+     *
+     * @throws IOException if they cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads game records.
+ * <p>
+ * Game records come in two formats. Text files have one game per line:
+ * the winner, {@code R}, {@code W} or {@code D} for a draw, then the moves
+ * from the starting position as written by {@link Move#toString(int)},
+ * all separated by spaces. Lines starting with {@code #} are skipped.
+ * <p>
+ * Binary files, written by {@link GameRecordWriter}, start with two
+ * little-endian ints, the magic number and the version. Every game
+ * follows as the size of the board (byte), the result (byte: 0 for a
+ * draw, 1 for red, 2 for white, 3 if unfinished), the names of the
+ * players of red and white (each a byte of length and UTF-8), the number
+ * of plies (unsigned short) and a byte per ply: the number of the move
+ * among the legal ones, in the order {@link MoveGenerator} makes them.
+ * So a game on 6x6 takes little more than a byte per move, and the
+ * games are read one at a time, however many the file holds.
+ */
+public final class GameRecords {
+    /** "LOAR" in ASCII. */
+    static final int MAGIC = 0x4C4F4152;
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 8;
+
+    /** Enough for the largest game, names included. */
+    private static final int BUFFER_BYTES = 1 << 17;
+
+    private static final int UNFINISHED = 3;
+
+    private GameRecords() {
+    }
+
+    /**
+     * Reads the finished games of a record file one at a time, in either
+     * format.
+     *
+     * @param path the record file
+     * @param geometry the size of the board the games are played on; the
+     *                 games of a binary file on other boards are skipped
+     * @param games given the moves and the winner of every game, NONE for
+     *              a draw
+     * @return the number of games read
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a game
+     */
+    public static int read(Path path, Geometry geometry, BiConsumer<int[], PieceType> games)
+            throws IOException {
+        if (isBinary(path)) {
+            int[] read = new int[1];
+            try (Stream<GameRecord> stream = stream(path)) {
+                stream.filter(game -> game.getSize() == geometry.getSize() && game.getWinner() != null)
+                        .forEach(game -> {
+                            games.accept(game.getMoves(), game.getWinner());
+                            read[0]++;
+                        });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return read[0];
+        }
+
+        int read = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                String[] tokens = line.split("\\s+");
+                PieceType winner;
+                switch (tokens[0]) {
+                    case "R":
+                        winner = PieceType.RED;
+                        break;
+                    case "W":
+                        winner = PieceType.WHITE;
+                        break;
+                    case "D":
+                        winner = PieceType.NONE;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Not a game: " + line);
+                }
+
+                Board board = Board.initial(geometry);
+                int[] moves = new int[tokens.length - 1];
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] = Move.parse(board, tokens[i + 1]);
+                    if (moves[i] == Move.NONE) {
+                        throw new IllegalArgumentException("Illegal move " + tokens[i + 1] + " in: " + line);
+                    }
+                    board.makeMove(Move.from(moves[i]), Move.to(moves[i]));
+                }
+                games.accept(moves, winner);
+                read++;
+            }
+        }
+
+        return read;
+    }
+
+    /**
+     * Checks if a record file is in the binary format.
+     *
+     * @param path the record file
+     * @return true if it starts with the magic number
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Until the magic number is in or the file ends
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the games of a binary record file lazily, as the stream is
+     * consumed. The stream must be closed to close the file.
+     * <p>
+     * A game cut short at the end of the file, as when the program writing
+     * it was killed, ends the stream.
+     *
+     * @param path the record file
+     * @return the games in the order they were written
+     * @throws IOException if the file cannot be opened or is not a binary
+     *         record file
+     * @throws UncheckedIOException from the stream, if the file cannot be read
+     * @throws IllegalArgumentException from the stream, if a game is corrupt
+     */
+    public static Stream<GameRecord> stream(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Reader reader = new Reader(channel);
+            if (!reader.fill(HEADER_BYTES) || reader.buffer.getInt() != MAGIC || reader.buffer.getInt() != VERSION) {
+                throw new IOException("Not a binary game record file: " + path);
+            }
+
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the result byte of a winner.
+     */
+    static int resultCode(PieceType winner) {
+        if (winner == null) return UNFINISHED;
+
+        switch (winner) {
+            case RED:
+                return 1;
+            case WHITE:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    private static PieceType winner(int code) {
+        switch (code) {
+            case 0:
+                return PieceType.NONE;
+            case 1:
+                return PieceType.RED;
+            case 2:
+                return PieceType.WHITE;
+            case UNFINISHED:
+                return null;
+            default:
+                throw new IllegalArgumentException("Corrupt game record: result " + code);
+        }
+    }
+
+    /**
+     * Decodes the games of a file through a buffer refilled as it runs low.
+     */
+    private static final class Reader implements Iterator<GameRecord> {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        private boolean eof;
+        private GameRecord next;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        /**
+         * Reads until the buffer holds at least the given number of bytes.
+         *
+         * @return false if the file ends first
+         */
+        boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return true;
+
+            buffer.compact();
+            while (buffer.position() < bytes && !eof) {
+                eof = channel.read(buffer) < 0;
+            }
+            buffer.flip();
+
+            return buffer.remaining() >= bytes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = decode();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public GameRecord next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            GameRecord game = next;
+            next = null;
+            return game;
+        }
+
+        /**
+         * Returns the next game, or null at the end of the file.
+         */
+        private GameRecord decode() throws IOException {
+            // Every field is checked before it is taken, as the last game may be cut short
+            if (!fill(3)) return null;
+            int start = buffer.position();
+            int size = buffer.get(start) & 0xFF;
+            PieceType winner = winner(buffer.get(start + 1) & 0xFF);
+            int redLength = buffer.get(start + 2) & 0xFF;
+            if (size < Geometry.MIN_SIZE || size > Geometry.MAX_SIZE) {
+                throw new IllegalArgumentException("Corrupt game record: size " + size);
+            }
+
+            if (!fill(4 + redLength)) return null;
+            start = buffer.position();
+            int whiteLength = buffer.get(start + 3 + redLength) & 0xFF;
+            if (!fill(6 + redLength + whiteLength)) return null;
+            start = buffer.position();
+            int plies = buffer.getShort(start + 4 + redLength + whiteLength) & 0xFFFF;
+            int bytes = 6 + redLength + whiteLength + plies;
+            if (!fill(bytes)) return null;
+
+            buffer.position(buffer.position() + 3);
+            String red = string(redLength);
+            buffer.get();
+            String white = string(whiteLength);
+            buffer.getShort();
+
+            Board board = Board.initial(Geometry.of(size));
+            int[] played = new int[plies];
+            for (int i = 0; i < plies; i++) {
+                int k = buffer.get() & 0xFF;
+                int count = MoveGenerator.generateMoves(board, moves, 0);
+                if (k >= count) {
+                    throw new IllegalArgumentException("Corrupt game record: move " + k + " of " + count);
+                }
+                played[i] = moves[k];
+                board.makeMove(Move.from(played[i]), Move.to(played[i]));
+            }
+
+            return new GameRecord(size, red, white, winner, played);
+        }
+
+        private String string(int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
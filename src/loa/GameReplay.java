@@ -0,0 +1,149 @@
+package loa;
+
+import javafx.scene.Group;
+import javafx.scene.Parent;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.Pane;
+
+import static loa.Game.TILE_SIZE;
+
+/**
+ * Shows a recorded game on the board, a ply at a time.
+ * <p>
+ * The right arrow and space step forward, the left arrow back, and home
+ * and end go to the start and the end of the game. The pieces cannot be
+ * moved.
+ */
+public class GameReplay {
+    private final GameRecord game;
+    private final Geometry geometry;
+    private final Group tileGroup = new Group();
+    private final Group pieceGroup = new Group();
+    private final Tile[][] board;
+
+    /** The position after every ply, the starting one first. */
+    private final Board[] positions;
+
+    private int ply;
+
+    /** Called when the ply shown changes, or null. */
+    private Runnable onStep;
+
+    public GameReplay(GameRecord game) {
+        this.game = game;
+        this.geometry = Geometry.of(game.getSize());
+        this.board = new Tile[geometry.getSize()][geometry.getSize()];
+
+        int[] moves = game.getMoves();
+        positions = new Board[moves.length + 1];
+        positions[0] = Board.initial(geometry);
+        for (int i = 0; i < moves.length; i++) {
+            positions[i + 1] = new Board(positions[i]);
+            positions[i + 1].makeMove(Move.from(moves[i]), Move.to(moves[i]));
+        }
+    }
+
+    public Parent createContent() {
+        int size = geometry.getSize();
+        Pane root = new Pane();
+        root.setPrefSize(size * TILE_SIZE, size * TILE_SIZE);
+        root.getChildren().addAll(tileGroup, pieceGroup);
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                board[x][y] = new Tile(((x + y) % 2 == 0), x, y);
+                tileGroup.getChildren().add(board[x][y]);
+            }
+        }
+        draw();
+
+        return root;
+    }
+
+    public void setOnStep(Runnable onStep) {
+        this.onStep = onStep;
+    }
+
+    /**
+     * Steps through the game by the keys.
+     *
+     * @param e a key pressed in the scene of the replay
+     */
+    public void handleKey(KeyEvent e) {
+        switch (e.getCode()) {
+            case RIGHT:
+            case SPACE:
+                step(1);
+                break;
+            case LEFT:
+                step(-1);
+                break;
+            case HOME:
+                step(-ply);
+                break;
+            case END:
+                step(positions.length - 1 - ply);
+                break;
+            default:
+                return;
+        }
+        e.consume();
+    }
+
+    /**
+     * Moves forward or back a number of plies, within the game.
+     *
+     * @param plies the plies to move, back if negative
+     */
+    public void step(int plies) {
+        int target = Math.max(0, Math.min(positions.length - 1, ply + plies));
+        if (target == ply) return;
+
+        ply = target;
+        draw();
+        if (onStep != null) {
+            onStep.run();
+        }
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * Returns the players, the ply shown and, at the end, the result.
+     */
+    public String getTitle() {
+        String title = game.getRed() + " vs " + game.getWhite()
+                + ", ply " + ply + "/" + (positions.length - 1);
+        if (ply == positions.length - 1) {
+            PieceType winner = game.getWinner();
+            title += winner == null ? ", unfinished"
+                    : winner == PieceType.NONE ? ", draw" : ", " + winner + " won";
+        }
+
+        return title;
+    }
+
+    private void draw() {
+        pieceGroup.getChildren().clear();
+        Board position = positions[ply];
+        int lastTo = ply > 0 ? Move.to(game.getMoves()[ply - 1]) : -1;
+        int lastFrom = ply > 0 ? Move.from(game.getMoves()[ply - 1]) : -1;
+
+        for (int y = 0; y < geometry.getSize(); y++) {
+            for (int x = 0; x < geometry.getSize(); x++) {
+                int sq = Board.square(x, y);
+                board[x][y].changeColor(sq == lastFrom || sq == lastTo ? TileColor.GREEN
+                        : (x + y) % 2 == 0 ? TileColor.LIGHT : TileColor.DARK);
+                board[x][y].setPiece(null);
+                if (position.hasPiece(x, y)) {
+                    Piece piece = new Piece(position.getPiece(x, y), x, y, board);
+                    piece.setMouseTransparent(true);
+                    board[x][y].setPiece(piece);
+                    pieceGroup.getChildren().add(piece);
+                }
+            }
+        }
+    }
+}
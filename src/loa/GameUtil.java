@@ -8,32 +8,21 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.Dialog;
 import javafx.scene.layout.Pane;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.LinkedList;
 
-import static loa.Game.TILES;
 import static loa.Game.TILE_SIZE;
 
 public class GameUtil {
-    /**
-     * Table for determining weight of tile position.
-     */
-    public static final int[][] pieceSquareTable = {
-            { -80, -25, -20, -20, -20, -20, -25, -80 },
-            { -25,  10,  10,  10,  10,  10,  10, -25 },
-            { -20,  10,  25,  25,  25,  25,  10, -20 },
-            { -20,  10,  25,  50,  50,  25,  10, -20 },
-            { -20,  10,  25,  50,  50,  25,  10, -20 },
-            { -20,  10,  25,  25,  25,  25,  10, -20 },
-            { -25,  10,  10,  10,  10,  10,  10, -25 },
-            { -80, -25, -20, -20, -20, -20, -25, -80 }
-    };
-
     public Group tileGroup = new Group();
     public Group pieceGroup = new Group();
 
+    /** The size of the game board. */
+    private final Geometry geometry;
+
     /** The game board. */
-    private Tile[][] board = new Tile[TILES][TILES];
+    private final Tile[][] board;
 
     /** Tracks the current player. */
     private PieceType curPlayer = PieceType.RED;
@@ -44,6 +33,36 @@ public class GameUtil {
     /** The opponent. Either human or machine. Plays white side. */
     private Player player2;
 
+    /** Whether the machine is searching for its move; the board is locked meanwhile. */
+    private boolean machineThinking;
+
+    /** Moves played so far, kept for the game record. */
+    private final ArrayList<Integer> moves = new ArrayList<>();
+
+    /** Whether the game has been written to the record file. */
+    private boolean recorded;
+
+    /**
+     * Creates the game on a board of the default size.
+     */
+    public GameUtil() {
+        this(Geometry.of(Geometry.DEFAULT_SIZE));
+    }
+
+    /**
+     * Creates the game.
+     *
+     * @param geometry the size of the board
+     */
+    public GameUtil(Geometry geometry) {
+        this.geometry = geometry;
+        this.board = new Tile[geometry.getSize()][geometry.getSize()];
+    }
+
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
     public void setPlayer1(Player player1) {
         this.player1 = player1;
     }
@@ -53,24 +72,23 @@ public class GameUtil {
     }
 
     public Parent createContent() {
+        int size = geometry.getSize();
         Pane root = new Pane();
-        root.setPrefSize(TILES * TILE_SIZE, TILES * TILE_SIZE);
+        root.setPrefSize(size * TILE_SIZE, size * TILE_SIZE);
         root.getChildren().addAll(tileGroup, pieceGroup);
 
         /*
          * Initialize the board.
          */
-        for (int y = 0; y < TILES; y++) {
-            for (int x = 0; x < TILES; x++) {
+        Board initial = Board.initial(geometry);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 board[x][y] = new Tile(((x + y) % 2 == 0), x, y);
                 tileGroup.getChildren().add(board[x][y]);
 
                 Piece piece = null;
-                if ((y == 0 || y == TILES - 1) && (x > 0 && x < TILES - 1)) {
-                    piece = makePiece(PieceType.RED, x, y);
-                }
-                if ((x == 0 || x == TILES - 1) && (y > 0 && y < TILES - 1)) {
-                    piece = makePiece(PieceType.WHITE, x, y);
+                if (initial.hasPiece(x, y)) {
+                    piece = makePiece(initial.getPiece(x, y), x, y);
                 }
                 if (piece != null) {
                     board[x][y].setPiece(piece);
@@ -79,12 +97,13 @@ public class GameUtil {
             }
         }
 
-        for (int y = 0; y < TILES; y++) {
-            for (int x = 0; x < TILES; x++) {
+        Board position = snapshot(board, curPlayer);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
                 Piece piece = board[x][y].getPiece();
                 if (piece != null) {
                     piece.setCurPlayer(curPlayer);
-                    piece.setAvailableMoves(availableMoves(board, x, y));
+                    piece.setAvailableMoves(ReferenceRules.availableMoves(position, x, y));
                 }
             }
         }
@@ -107,6 +126,11 @@ public class GameUtil {
         Piece piece = new Piece(type, x, y, board);
 
         piece.setOnMouseReleased(e -> {
+            if (machineThinking) {
+                piece.abortMove();
+                return;
+            }
+
             int newX = toBoard(piece.getLayoutX());
             int newY = toBoard(piece.getLayoutY());
             int oldX = toBoard(piece.getOldX());
@@ -116,17 +140,61 @@ public class GameUtil {
             MoveResult result1 = player1.makeMove(board);
             if (result1.getType() != MoveType.NONE
                     && player2 instanceof MachinePlayer) {
-                MoveResult result2 = player2.makeMove(board);
-                if (result2 == null) {
-                    System.out.println("MSG: Machine has no possible move.");
-                    Platform.exit();
-                }
+                // Search off the JavaFX Application Thread so the window stays responsive
+                machineThinking = true;
+                ((MachinePlayer) player2).makeMoveAsync(board, result2 -> {
+                    machineThinking = false;
+                    if (result2 == null) {
+                        System.out.println("MSG: Machine has no possible move.");
+                        Platform.exit();
+                    }
+                });
             }
         });
 
         return piece;
     }
 
+    /**
+     * Cancels a machine search in progress and stops the engine, before
+     * the game is closed.
+     */
+    public void shutdown() {
+        if (!recorded && !moves.isEmpty()) {
+            record(null);
+        }
+        machineThinking = false;
+        if (player2 instanceof MachinePlayer) {
+            ((MachinePlayer) player2).shutdown();
+        }
+    }
+
+    /**
+     * Appends the game to the record file named by the {@code loa.record}
+     * system property, games.bin by default, unless it is empty. The game
+     * goes on if it cannot be recorded.
+     *
+     * @param winner the side that won, NONE for a draw, or null if the
+     *               game was not finished
+     */
+    private void record(PieceType winner) {
+        recorded = true;
+        String path = System.getProperty("loa.record", "games.bin");
+        if (path.isEmpty()) return;
+
+        int[] played = moves.stream().mapToInt(Integer::intValue).toArray();
+        GameRecord game = new GameRecord(geometry.getSize(), nameOf(player1), nameOf(player2), winner, played);
+        try (GameRecordWriter writer = GameRecordWriter.open(Path.of(path))) {
+            writer.write(game);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Cannot record the game to " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static String nameOf(Player player) {
+        return player instanceof MachinePlayer ? ((MachinePlayer) player).getName() : "human";
+    }
+
     private int toBoard(double pixel) {
         return (int) (pixel + TILE_SIZE / 2) / TILE_SIZE;
     }
@@ -151,13 +219,18 @@ public class GameUtil {
             System.out.println("Wat!!");
             result = new MoveResult(MoveType.NONE);
         }
-        else if (newX < 0 || newY < 0 || newX >= TILES || newY >= TILES) {
+        else if (!geometry.isWithinBoard(newX, newY)) {
             result = new MoveResult(MoveType.NONE);
         }
         else {
             result = tryMove(board, piece, newX, newY);
         }
 
+        if (result.getType() != MoveType.NONE) {
+            moves.add(Move.encode(Board.square(oldX, oldY), Board.square(newX, newY),
+                    result.getType() == MoveType.KILL));
+        }
+
         switch (result.getType()) {
             case NONE:
                 piece.abortMove();
@@ -198,8 +271,7 @@ public class GameUtil {
      * @return the result of the move
      */
     public MoveResult tryMove(Tile[][] board, Piece piece, int newX, int newY) {
-        TilePosition newPosition = new TilePosition(newX, newY);
-        if (piece.getAvailableMoves().contains(newPosition)) {
+        if (isAvailable(piece, newX, newY)) {
             if (board[newX][newY].hasPiece()) {
                 return new MoveResult(MoveType.KILL, board[newX][newY].getPiece());
             }
@@ -211,32 +283,56 @@ public class GameUtil {
         return new MoveResult(MoveType.NONE);
     }
 
+    /**
+     * Checks if a tile is among the moves of a piece, without building
+     * a TilePosition to look it up.
+     *
+     * @param piece the piece to be moved
+     * @param x col number of the tile
+     * @param y row number of the tile
+     * @return true if the piece can move to the tile
+     */
+    private boolean isAvailable(Piece piece, int x, int y) {
+        for (TilePosition pos : piece.getAvailableMoves()) {
+            if (pos.getX() == x && pos.getY() == y) return true;
+        }
+
+        return false;
+    }
+
     /**
      * Draws a dialog box with the information of the winner, if the game is over.
      */
     public void declareWinner() {
+        Board board = snapshot(this.board, curPlayer);
         if (gameOver(board)) {
             Dialog<String> dialog = new Dialog<String>();
             dialog.setTitle("Result");
 
-            if (hasWon(board, PieceType.RED) && hasWon(board, PieceType.WHITE)) {
+            PieceType winner = null;
+            if (ReferenceRules.hasWon(board, PieceType.RED) && ReferenceRules.hasWon(board, PieceType.WHITE)) {
                 if (curPlayer == PieceType.RED) {
                     dialog.setContentText("WHITE Won!");
                     System.out.println("WHITE Won!");
+                    winner = PieceType.WHITE;
                 }
                 else {
                     dialog.setContentText("RED Won!");
                     System.out.println("RED Won!");
+                    winner = PieceType.RED;
                 }
             }
-            else if (hasWon(board, PieceType.RED)) {
+            else if (ReferenceRules.hasWon(board, PieceType.RED)) {
                 dialog.setContentText("RED Won!");
                 System.out.println("RED Won!");
+                winner = PieceType.RED;
             }
-            else if (hasWon(board, PieceType.WHITE)) {
+            else if (ReferenceRules.hasWon(board, PieceType.WHITE)) {
                 dialog.setContentText("WHITE Won!");
                 System.out.println("WHITE Won!");
+                winner = PieceType.WHITE;
             }
+            record(winner);
 
             ButtonType type = new ButtonType("Ok", ButtonData.OK_DONE);
             dialog.getDialogPane().getButtonTypes().add(type);
@@ -255,8 +351,9 @@ public class GameUtil {
      * For each piece, the available tiles for next move are recounted.
      */
     public void resetBoard(Tile[][] board) {
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
+        Board position = snapshot(board, curPlayer);
+        for (int i = 0; i < geometry.getSize(); i++) {
+            for (int j = 0; j < geometry.getSize(); j++) {
                 if ((i + j) % 2 == 0) {
                     board[i][j].changeColor(TileColor.LIGHT);
                 }
@@ -266,201 +363,38 @@ public class GameUtil {
 
                 if (board[i][j].hasPiece()) {
                     board[i][j].getPiece().setCurPlayer(curPlayer);
-                    board[i][j].getPiece().setAvailableMoves(availableMoves(board, i, j));
+                    board[i][j].getPiece().setAvailableMoves(ReferenceRules.availableMoves(position, i, j));
                 }
             }
         }
     }
 
-    public PieceType changeCurrentPlayer() {
-        return curPlayer == PieceType.WHITE ? PieceType.RED : PieceType.WHITE;
-    }
-
     /**
-     * Returns a set of tiles available for making the next move.
+     * Converts the tiles of the board into a headless position.
+     * <p>
+     * The engine and the rule checks run on the returned position;
+     * the board itself is only touched to draw the pieces.
      *
-     * @param x col number of the tile
-     * @param y row number of the tile
-     * @return an arraylist of the tiles available for next move
+     * @param board the game board
+     * @param sideToMove the side that makes the next move
+     * @return the position on the board
      */
-    public ArrayList<TilePosition> availableMoves(Tile[][] board, int x, int y) {
-        ArrayList<TilePosition> availableTiles = new ArrayList<>();
-        PieceType ownType = board[x][y].getPiece().getType();
-        PieceType oppType = ownType == PieceType.RED ? PieceType.WHITE : PieceType.RED;
-
-        /*
-         * Check the availability of horizontal tiles
-         */
-        int totalPiece = 0;
-        boolean oppFound, occupied;
-        for (int i = 0; i < TILES; i++) {
-            if (board[i][y].hasPiece()) totalPiece++;
-        }
-        if (isWithinBoard(x + totalPiece, y)) {
-            oppFound = false;
-            occupied = false;
-            for (int i = x + 1; i < x + totalPiece; i++) {
-                if (hasPieceOnXY(board, i, y, oppType)) {
-                    oppFound = true;
-                    break;
-                }
-            }
-            if (hasPieceOnXY(board, x + totalPiece, y, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x + totalPiece, y));
-        }
-        if (isWithinBoard(x - totalPiece, y)) {
-            oppFound = false;
-            occupied = false;
-            for (int i = x - totalPiece + 1; i < x; i++) {
-                if (hasPieceOnXY(board, i, y, oppType)) {
-                    oppFound = true;
-                    break;
-                }
-            }
-            if (hasPieceOnXY(board, x - totalPiece, y, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x - totalPiece, y));
-        }
-
-        /*
-         * Check the availability of vertical tiles
-         */
-        totalPiece = 0;
-        for (int i = 0; i < TILES; i++) {
-            if (board[x][i].hasPiece()) totalPiece++;
-        }
-        if (isWithinBoard(x, y + totalPiece)) {
-            oppFound = false;
-            occupied = false;
-            for (int j = y + 1; j < y + totalPiece; j++) {
-                if (hasPieceOnXY(board, x, j, oppType)) {
-                    oppFound = true;
-                    break;
-                }
-            }
-            if (hasPieceOnXY(board, x, y + totalPiece, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x, y + totalPiece));
-        }
-        if (isWithinBoard(x, y - totalPiece)) {
-            oppFound = false;
-            occupied = false;
-            for (int j = y - totalPiece + 1; j < y; j++) {
-                if (hasPieceOnXY(board, x, j, oppType)) {
-                    oppFound = true;
-                    break;
-                }
-            }
-            if (hasPieceOnXY(board, x, y - totalPiece, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x, y - totalPiece));
-        }
-
-        /*
-         * Check the availability of diagonal tiles going from top-left to bottom-right
-         */
-        totalPiece = 0;
-        for (int i = x, j = y; i >= 0 && i < TILES && j >= 0 && j < TILES; i--, j--) {
-            if (board[i][j].hasPiece()) totalPiece++;
-        }
-        for (int i = x, j = y; i >= 0 && i < TILES && j >= 0 && j < TILES; i++, j++) {
-            if (board[i][j].hasPiece()) totalPiece++;
-        }
-        totalPiece--; // counted the piece in board[x][y] twice
-        if (isWithinBoard(x - totalPiece, y - totalPiece)) {
-            oppFound = false;
-            occupied = false;
-            for (int i = x - totalPiece + 1, j = y - totalPiece + 1; i < x && j < y; i++, j++) {
-                if (hasPieceOnXY(board, i, j, oppType)) {
-                    oppFound = true;
-                    break;
-                }
-            }
-            if (hasPieceOnXY(board, x - totalPiece, y - totalPiece, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x - totalPiece, y - totalPiece));
-        }
-        if (isWithinBoard(x + totalPiece, y + totalPiece)) {
-            oppFound = false;
-            occupied = false;
-            for (int i = x + 1, j = y + 1; i < x + totalPiece && j < y + totalPiece; i++, j++) {
-                if (hasPieceOnXY(board, i, j, oppType)) {
-                    oppFound = true;
-                    break;
-                }
-            }
-            if (hasPieceOnXY(board, x + totalPiece, y + totalPiece, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x + totalPiece, y + totalPiece));
-        }
-
-        /*
-         * Check the availability of diagonal tiles going from bottom-left to top-right
-         */
-        totalPiece = 0;
-        for (int i = x, j = y; i >= 0 && i < TILES && j >= 0 && j < TILES; i--, j++) {
-            if (board[i][j].hasPiece()) totalPiece++;
-        }
-        for (int i = x, j = y; i >= 0 && i < TILES && j >= 0 && j < TILES; i++, j--) {
-            if (board[i][j].hasPiece()) totalPiece++;
-        }
-        totalPiece--; // counted the piece in board[x][y] twice
-        if (isWithinBoard(x - totalPiece, y + totalPiece)) {
-            oppFound = false;
-            occupied = false;
-            for (int i = x - totalPiece + 1, j = y + totalPiece - 1; i < x && j > y; i++, j--) {
-                if (hasPieceOnXY(board, i, j, oppType)) {
-                    oppFound = true;
-                    break;
-                }
-            }
-            if (hasPieceOnXY(board, x - totalPiece, y + totalPiece, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x - totalPiece, y + totalPiece));
-        }
-        if (isWithinBoard(x + totalPiece, y - totalPiece)) {
-            oppFound = false;
-            occupied = false;
-            for (int i = x + 1, j = y - 1; i < x + totalPiece && j > y - totalPiece; i++, j--) {
-                if (hasPieceOnXY(board, i, j, oppType)) {
-                    oppFound = true;
-                    break;
+    public Board snapshot(Tile[][] board, PieceType sideToMove) {
+        Board position = new Board(geometry);
+        for (int i = 0; i < geometry.getSize(); i++) {
+            for (int j = 0; j < geometry.getSize(); j++) {
+                if (board[i][j].hasPiece()) {
+                    position.setPiece(i, j, board[i][j].getPiece().getType());
                 }
             }
-            if (hasPieceOnXY(board, x + totalPiece, y - totalPiece, ownType))
-                occupied = true;
-            if (!oppFound && !occupied)
-                availableTiles.add(new TilePosition(x + totalPiece, y - totalPiece));
         }
+        position.setSideToMove(sideToMove);
 
-        return availableTiles;
+        return position;
     }
 
-    /**
-     * Checks if the specified side has won.
-     * <p>
-     * A side wins if all the pieces of the side are contiguous.
-     *
-     * @param side the side
-     * @return true if side param has won
-     */
-    private boolean hasWon(Tile[][] board, PieceType side) {
-        int nrPcs = totalPcs(board, side);
-        int ctPcs = contPcs(board, side);
-
-        if (ctPcs == -1) {
-            return false;
-        }
-
-        return nrPcs == ctPcs;
+    public PieceType changeCurrentPlayer() {
+        return curPlayer == PieceType.WHITE ? PieceType.RED : PieceType.WHITE;
     }
 
     /**
@@ -468,130 +402,14 @@ public class GameUtil {
      * <p>
      * A game is over when a player wins or the game ends in a tie.
      *
-     * @param board the game board
+     * @param board the game position
      * @return true if the game is over
      */
-    private boolean gameOver(Tile[][] board) {
-        return hasWon(board, PieceType.WHITE) || hasWon(board, PieceType.RED);
-    }
-
-    /**
-     * Returns a PieceType object of the winning side.
-     *
-     * @param board the game board
-     * @return piece type of the winner if the game is over, otherwise null
-     */
-    public PieceType getWinner(Tile[][] board) {
-        if (hasWon(board, PieceType.RED) && hasWon(board, PieceType.WHITE))
-            return PieceType.NONE;
-        if (hasWon(board, PieceType.RED))
-            return PieceType.RED;
-        if (hasWon(board, PieceType.WHITE))
-            return PieceType.WHITE;
-
-        return null;
-    }
-
-    /**
-     * Returns the total number of pieces of a side on the board.
-     *
-     * @param board the game board
-     * @param side the side of the pieces to be counted
-     * @return the number of pieces of side param
-     */
-    private int totalPcs(Tile[][] board, PieceType side) {
-        int count = 0;
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (hasPieceOnXY(board, i, j, side))
-                    count++;
-            }
-        }
-
-        return count;
-    }
-
-    /**
-     * Returns the number of contiguous pieces of a side in a random cluster.
-     *
-     * @param board the game board
-     * @param side the side to count the pieces of
-     * @return the number of contiguous pieces of side param
-     */
-    private int contPcs(Tile[][] board, PieceType side) {
-        TilePosition firstSpot = null;
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (hasPieceOnXY(board, i, j, side)) {
-                    if (firstSpot == null)
-                        firstSpot = board[i][j].getPosition();
-                }
-            }
-        }
-
-        if (firstSpot == null) {
-            System.out.println("ERROR: No piece of " + side + " is on the board.");
-            return -1;
-        }
-
-        return ctgPcsAt(board, side, firstSpot);
-    }
-
-    /**
-     * Returns the number of contiguous pieces of a side at a given cluster.
-     *
-     * @param board the game board
-     * @param side the side to count the pieces of
-     * @param firstSpot the tile around where to count the cluster
-     * @return the number of contiguous pieces of side param
-     */
-    int ctgPcsAt(Tile[][] board, PieceType side, TilePosition firstSpot) {
-        int count = 0;
-        boolean[][] visited = new boolean[TILES][TILES];
-
-        LinkedList<TilePosition> queue = new LinkedList<>();
-        queue.add(firstSpot);
-        visited[firstSpot.getX()][firstSpot.getY()] = true;
-        count++;
-
-        while (!queue.isEmpty()) {
-            TilePosition pos = queue.remove();
-            int i = pos.getX();
-            int j = pos.getY();
-
-            int[] intI = {i - 1, i , i + 1};
-            int[] intJ = {j - 1, j, j + 1};
-
-            for (int m = 0; m < 3; m++) {
-                for (int n = 0; n < 3; n++) {
-                    if (m == 1 && n == 1) continue;
-                    if (isWithinBoard(intI[m], intJ[n]) && !visited[intI[m]][intJ[n]]) {
-                        Piece p = board[intI[m]][intJ[n]].getPiece();
-                        if (p != null && p.getType() == side) {
-                            queue.add(board[intI[m]][intJ[n]].getPosition());
-                            visited[intI[m]][intJ[n]] = true;
-                            count++;
-                        }
-                    }
-                }
-            }
-        }
-
-        return count;
+    private boolean gameOver(Board board) {
+        return ReferenceRules.hasWon(board, PieceType.WHITE) || ReferenceRules.hasWon(board, PieceType.RED);
     }
 
 
-    /**
-     * Checks if the specified tile is inside the board.
-     *
-     * @param x col number of the tile
-     * @param y row number of the tile
-     * @return true if tile at col x and row y is inside the board
-     */
-    private boolean isWithinBoard(int x, int y) {
-        return x >= 0 && x < TILES && y >= 0 && y < TILES;
-    }
-
     /**
      * Checks if the piece on the tile is of the specified type.
      *
@@ -601,7 +419,7 @@ public class GameUtil {
      * @return true if the piece at col x and row y is of `type`
      */
     public boolean hasPieceOnXY(Tile[][] board, int x, int y, PieceType type) {
-        if (!isWithinBoard(x, y)) return false;
+        if (!geometry.isWithinBoard(x, y)) return false;
         if (!board[x][y].hasPiece()) return false;
         return board[x][y].getPiece().getType() == type;
     }
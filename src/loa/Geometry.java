@@ -0,0 +1,250 @@
+package loa;
+
+import java.util.SplittableRandom;
+
+/**
+ * The size of a board and every table that depends on it.
+ * <p>
+ * Squares are numbered {@code x * 8 + y} whatever the size, so a square
+ * and its col and row convert with shifts and masks, and a mask of the
+ * pieces of one side fits in a {@code long} on boards up to 8x8. The
+ * tables below are built once per size and shared by all the boards of
+ * that size, so boards of different sizes can be used side by side.
+ * <p>
+ * The tables are read directly by {@link Board}, {@link MoveGenerator}
+ * and {@link Evaluator}, in the hot paths of the search.
+ */
+public final class Geometry {
+    /** Smallest and largest number of tiles on a side of the board. */
+    public static final int MIN_SIZE = 4, MAX_SIZE = 8;
+
+    /** Number of tiles on a side of the board used when none is given. */
+    public static final int DEFAULT_SIZE = 6;
+
+    /** Number of square indices, on any board. */
+    public static final int SQUARES = 64;
+
+    /** Number of slots per (square, direction) in the move tables, one per distance. */
+    static final int STRIDE = MAX_SIZE + 1;
+
+    /** Steps of the directions, grouped in pairs along the same axis. */
+    private static final int[] DX = { 1, -1, 0,  0, -1, 1, -1,  1 };
+    private static final int[] DY = { 0,  0, 1, -1, -1, 1,  1, -1 };
+
+    private static final Geometry[] SIZES = new Geometry[MAX_SIZE + 1];
+
+    static {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            SIZES[size] = new Geometry(size);
+        }
+    }
+
+    /** Number of tiles on a side of the board. */
+    final int size;
+
+    /** Mask of all the squares on the board. */
+    final long full;
+
+    /** Masks of the squares in the first and last row. */
+    final long firstRow, lastRow;
+
+    /** Number of rows, cols and diagonals together. */
+    final int lines;
+
+    /** Index of the line through every (square, axis) pair. */
+    final int[] lineOf = new int[SQUARES * Board.AXES];
+
+    /** Number of 2x2 quads, including those hanging over the edge of the board. */
+    final int quads;
+
+    /** Squares of every quad, and the two diagonal pairs of them. */
+    final long[] quadMask, quadDiag, quadAntiDiag;
+
+    /** Whether a quad lies wholly on the board. */
+    final boolean[] quadInside;
+
+    /** The four quads every square lies in. */
+    final int[] quadsOf = new int[SQUARES * 4];
+
+    /** Weight of a piece on every square, from {@link Evaluator#pieceSquareTable}. */
+    final int[] squareWeight = new int[SQUARES];
+
+    /** Zobrist keys of a red or white piece on every square, and of white to move. */
+    final long[] redKeys = new long[SQUARES];
+    final long[] whiteKeys = new long[SQUARES];
+    final long whiteToMoveKey;
+
+    /**
+     * Target square of every (square, direction, distance). A target off the
+     * board points back at the square itself, which always holds an own piece,
+     * so it is rejected by the same test as a target holding an own piece.
+     */
+    final int[] target = new int[SQUARES * 8 * STRIDE];
+
+    /** Squares strictly between a piece and its target. */
+    final long[] between = new long[SQUARES * 8 * STRIDE];
+
+    /** Number of whole distances between two squares. */
+    final int rings;
+
+    /**
+     * Squares at every whole distance from every square, indexed
+     * {@code square * rings + distance}. The distance is rounded down.
+     */
+    final long[] ring;
+
+    private Geometry(int size) {
+        this.size = size;
+
+        long all = 0, first = 0, last = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                all |= 1L << Board.square(x, y);
+            }
+            first |= 1L << Board.square(x, 0);
+            last |= 1L << Board.square(x, size - 1);
+        }
+        full = all;
+        firstRow = first;
+        lastRow = last;
+
+        lines = 6 * size - 2;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int sq = Board.square(x, y);
+                lineOf[sq * Board.AXES + Board.ROW] = y;
+                lineOf[sq * Board.AXES + Board.COL] = size + x;
+                lineOf[sq * Board.AXES + Board.DIAG] = 2 * size + (x - y + size - 1);
+                lineOf[sq * Board.AXES + Board.ANTI_DIAG] = 4 * size - 1 + (x + y);
+            }
+        }
+
+        // Quad q has its top-left square at (q / (size + 1) - 1, q % (size + 1) - 1)
+        quads = (size + 1) * (size + 1);
+        quadMask = new long[quads];
+        quadDiag = new long[quads];
+        quadAntiDiag = new long[quads];
+        quadInside = new boolean[quads];
+        for (int q = 0; q < quads; q++) {
+            int qx = q / (size + 1) - 1;
+            int qy = q % (size + 1) - 1;
+            quadMask[q] = bit(qx, qy) | bit(qx + 1, qy) | bit(qx, qy + 1) | bit(qx + 1, qy + 1);
+            quadDiag[q] = bit(qx, qy) | bit(qx + 1, qy + 1);
+            quadAntiDiag[q] = bit(qx + 1, qy) | bit(qx, qy + 1);
+            quadInside[q] = qx >= 0 && qy >= 0 && qx < size - 1 && qy < size - 1;
+        }
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int sq = Board.square(x, y);
+                quadsOf[sq * 4] = x * (size + 1) + y;
+                quadsOf[sq * 4 + 1] = x * (size + 1) + y + 1;
+                quadsOf[sq * 4 + 2] = (x + 1) * (size + 1) + y;
+                quadsOf[sq * 4 + 3] = (x + 1) * (size + 1) + y + 1;
+            }
+        }
+
+        // The table is 8x8; a smaller board takes the middle of it
+        int z = (8 - size) / 2;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                squareWeight[Board.square(x, y)] = Evaluator.pieceSquareTable[x + z][y + z];
+            }
+        }
+
+        // A fixed seed keeps the hashes, and so the search, reproducible
+        SplittableRandom random = new SplittableRandom(0x10AL);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                redKeys[Board.square(x, y)] = random.nextLong();
+                whiteKeys[Board.square(x, y)] = random.nextLong();
+            }
+        }
+        whiteToMoveKey = random.nextLong();
+
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                int sq = Board.square(x, y);
+                for (int dir = 0; dir < 8; dir++) {
+                    long path = 0;
+                    for (int dist = 0; dist < STRIDE; dist++) {
+                        int idx = (sq * 8 + dir) * STRIDE + dist;
+                        int tx = x + DX[dir] * dist;
+                        int ty = y + DY[dir] * dist;
+                        if (dist > 0 && isWithinBoard(tx, ty)) {
+                            target[idx] = Board.square(tx, ty);
+                            between[idx] = path;
+                            path |= 1L << target[idx];
+                        }
+                        else {
+                            target[idx] = sq;
+                        }
+                    }
+                }
+            }
+        }
+
+        rings = (int) Math.sqrt(2 * (size - 1) * (size - 1)) + 1;
+        ring = new long[SQUARES * rings];
+        for (long c = full; c != 0; c &= c - 1) {
+            int centre = Long.numberOfTrailingZeros(c);
+            for (long s = full; s != 0; s &= s - 1) {
+                int sq = Long.numberOfTrailingZeros(s);
+                int dx = Math.abs(Board.colOf(centre) - Board.colOf(sq));
+                int dy = Math.abs(Board.rowOf(centre) - Board.rowOf(sq));
+                ring[centre * rings + (int) Math.sqrt(dx * dx + dy * dy)] |= 1L << sq;
+            }
+        }
+    }
+
+    /**
+     * Returns the geometry of a board size.
+     *
+     * @param size the number of tiles on a side of the board
+     * @return the shared geometry of that size
+     * @throws IllegalArgumentException if the size is not supported
+     */
+    public static Geometry of(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Unsupported board size: " + size);
+        }
+
+        return SIZES[size];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the mask of all the squares on the board.
+     */
+    public long getFull() {
+        return full;
+    }
+
+    /**
+     * Checks if the specified tile is inside the board.
+     *
+     * @param x col number of the tile
+     * @param y row number of the tile
+     * @return true if tile at col x and row y is inside the board
+     */
+    public boolean isWithinBoard(int x, int y) {
+        return x >= 0 && x < size && y >= 0 && y < size;
+    }
+
+    private long bit(int x, int y) {
+        return isWithinBoard(x, y) ? 1L << Board.square(x, y) : 0;
+    }
+
+    /**
+     * Returns the squares in a mask together with all the squares around them.
+     *
+     * @param mask the squares to grow
+     * @return the grown mask
+     */
+    long neighbours(long mask) {
+        long column = mask | ((mask & ~lastRow) << 1) | ((mask & ~firstRow) >>> 1);
+        return (column | (column << 8) | (column >>> 8)) & full;
+    }
+}
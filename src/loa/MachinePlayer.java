@@ -1,13 +1,165 @@
 package loa;
 
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Random;
-
-import static loa.Game.TILES;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class MachinePlayer extends Player {
+    private final EngineConfig config;
+
+    /** Results of earlier searches, kept from one move to the next; null with the Monte Carlo search. */
+    private final TranspositionTable table;
+
+    /** The alpha-beta search, or null if the Monte Carlo search plays instead. */
+    private final ParallelSearch search;
+
+    /** Monte Carlo search played instead of the alpha-beta one, or null for none. */
+    private final MctsSearch mcts;
+
+    /** Moves played without a search at the start of the game, or null for none. */
+    private final OpeningBook book;
+
+    /** Perfect moves of the positions with few pieces left, or null for none. */
+    private final Tablebase tablebase;
+
+    /** Runs the searches started by {@link #makeMoveAsync}, one at a time. */
+    private final ExecutorService engine = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "loa-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Counts the searches started and cancelled; a search whose count is
+     * no longer current has its move thrown away. Only written on the
+     * JavaFX Application Thread.
+     */
+    private volatile int generation;
+
+    /**
+     * The limits of the search started last. Made before the search is
+     * handed to the engine thread, so a stop or a time limit that comes
+     * before it starts is not lost.
+     */
+    private volatile SearchBudget budget;
+
+    /*
+     * State of the ponder search, only touched on the JavaFX Application
+     * Thread. The position is the one the search is running on: after the
+     * reply the machine expects, or after its own move if it has none.
+     */
+    private Board ponderPosition;
+    private long ponderStart;
+    private boolean ponderDone;
+    private int ponderMove;
+    private Consumer<MoveResult> ponderOnMove;
+
     public MachinePlayer(GameUtil util) {
+        this(util, EngineConfig.fromSystemProperties());
+    }
+
+    public MachinePlayer(GameUtil util, EngineConfig config) {
         super(util);
+        this.config = config;
+        this.mcts = config.isMcts() ? new MctsSearch(config) : null;
+        this.table = mcts == null ? new TranspositionTable(config.getHashSizeMb()) : null;
+        this.search = mcts == null ? new ParallelSearch(table, config, readWeights(config.getWeights())) : null;
+        this.book = openBook(config.getBook());
+        this.tablebase = openTablebase(config.getTablebase());
+
+        if (config.isTelemetry() && search != null) {
+            try {
+                EngineStats.register("machine", search);
+            } catch (IllegalStateException e) {
+                System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens the opening book; the machine plays without one if it cannot.
+     *
+     * @param path the book file, or empty for none
+     * @return the book, or null
+     */
+    private static OpeningBook openBook(String path) {
+        if (path.isEmpty()) return null;
+
+        try {
+            return OpeningBook.open(Path.of(path));
+        } catch (IOException e) {
+            System.err.println("Cannot open the opening book " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the evaluation weights; the machine plays with the default
+     * ones if it cannot.
+     *
+     * @param path the weights file, or empty for the default weights
+     * @return the weights
+     */
+    private static int[] readWeights(String path) {
+        if (path.isEmpty()) return Evaluator.defaultWeights();
+
+        try {
+            return Evaluator.readWeights(Path.of(path));
+        } catch (IOException e) {
+            System.err.println("Cannot read the evaluation weights " + path + ": " + e.getMessage());
+            return Evaluator.defaultWeights();
+        }
+    }
+
+    /**
+     * Opens the endgame tablebase; the machine plays without one if it cannot.
+     *
+     * @param path the tablebase file, or empty for none
+     * @return the tablebase, or null
+     */
+    private static Tablebase openTablebase(String path) {
+        if (path.isEmpty()) return null;
+
+        try {
+            return Tablebase.open(Path.of(path));
+        } catch (IOException e) {
+            System.err.println("Cannot open the tablebase " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the name the machine is recorded under: its engine.
+     */
+    public String getName() {
+        return "machine " + config.getEngine();
+    }
+
+    /**
+     * Returns the transposition table, or null if the machine plays Monte Carlo.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Returns the alpha-beta search, or null if the machine plays Monte Carlo.
+     */
+    public ParallelSearch getSearch() {
+        return search;
+    }
+
+    /**
+     * Returns the Monte Carlo search, or null if the machine plays alpha-beta.
+     */
+    public MctsSearch getMcts() {
+        return mcts;
     }
 
     @Override
@@ -18,10 +170,12 @@ public class MachinePlayer extends Player {
     }
 
     private MoveResult machineMoveRandom(Tile[][] board) {
+        Board position = util.snapshot(board, PieceType.WHITE);
         ArrayList<TilePosition> pcsPos = new ArrayList<>();
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (util.hasPieceOnXY(board, i, j, PieceType.WHITE)) {
+        int size = position.getGeometry().getSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (position.hasPieceOnXY(i, j, PieceType.WHITE)) {
                     pcsPos.add(board[i][j].getPosition());
                 }
             }
@@ -37,7 +191,7 @@ public class MachinePlayer extends Player {
             oldY = pcsPos.get(pos).getY();
             piece = board[oldX][oldY].getPiece();
 
-            availPos = util.availableMoves(board, oldX, oldY);
+            availPos = ReferenceRules.availableMoves(position, oldX, oldY);
         } while(availPos.size() == 0);
 
         pos = rand.nextInt(availPos.size());
@@ -47,341 +201,208 @@ public class MachinePlayer extends Player {
         return util.movePiece(board, piece, oldX, oldY, newX, newY);
     }
 
-    private MoveResult machineMoveMiniMax(Tile[][] board) {
-        int score = 0;
-        int bestScore = Integer.MIN_VALUE;
-        int oldX = -1;
-        int oldY = -1;
-        int newX = -1;
-        int newY = -1;
-
-        Tile[][] dummyBoard = new Tile[TILES][TILES];
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                Piece piece = board[i][j].getPiece();
-                dummyBoard[i][j] = new Tile(((i + j) % 2 == 0), i, j);
-                if (piece != null) {
-                    dummyBoard[i][j].setPiece(new Piece(piece.getType(), i, j, dummyBoard));
+    /**
+     * Searches for a move on a background thread and plays it on the
+     * JavaFX Application Thread.
+     * <p>
+     * The search runs on a snapshot of the board, so the board is only
+     * read and changed on the JavaFX Application Thread, which is also
+     * where this must be called from.
+     * <p>
+     * If the engine was pondering on the reply the human just played, that
+     * search carries on instead of starting over, and the time it has
+     * already spent counts towards the budget of the move. On any other
+     * reply it is stopped, but what it stored in the transposition table
+     * is kept for the new search.
+     *
+     * @param board the game board
+     * @param onMove called on the JavaFX Application Thread with the result
+     *               of the move, or null if the machine has no move; not
+     *               called if the search is cancelled
+     */
+    public void makeMoveAsync(Tile[][] board, Consumer<MoveResult> onMove) {
+        Board position = util.snapshot(board, PieceType.WHITE);
+
+        if (ponderPosition != null) {
+            if (ponderPosition.getHash() == position.getHash()) {
+                ponderPosition = null;
+                if (ponderDone) {
+                    finish(board, ponderMove, onMove);
                 }
-            }
-        }
-
-        util.resetBoard(dummyBoard);
-
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (!util.hasPieceOnXY(dummyBoard, i, j, PieceType.WHITE)) continue;
-                Piece piece = dummyBoard[i][j].getPiece();
-                piece.setAvailableMoves(util.availableMoves(dummyBoard, i, j));
-                ArrayList<TilePosition> availableMoves = piece.getAvailableMoves();
-
-                /*
-                 * Move piece to all available positions,
-                 * calculate the scores for each move,
-                 * and make the move with the best score.
-                 */
-                for (TilePosition pos : availableMoves) {
-                    // Store the piece that might get killed in the move
-                    Piece otherPiece = dummyBoard[pos.getX()][pos.getY()].getPiece();
-
-                    // Move piece to a valid tile
-                    dummyBoard[i][j].setPiece(null);
-                    dummyBoard[pos.getX()][pos.getY()].setPiece(piece);
-
-                    // Calculate the score of the new game state
-                    score = minimax(dummyBoard, 3, Integer.MIN_VALUE, Integer.MAX_VALUE, false);
-
-                    // Move piece to its previous tile
-                    dummyBoard[i][j].setPiece(piece);
-                    dummyBoard[pos.getX()][pos.getY()].setPiece(null);
-
-                    // Restore the piece that might have gotten killed in the move
-                    dummyBoard[pos.getX()][pos.getY()].setPiece(otherPiece);
-
-                    if (score > bestScore) {
-                        bestScore = score;
-                        oldX = i;
-                        oldY = j;
-                        newX = pos.getX();
-                        newY = pos.getY();
+                else {
+                    ponderOnMove = onMove;
+                    if (config.getMoveTimeMs() > 0) {
+                        long spentMs = (System.nanoTime() - ponderStart) / 1_000_000;
+                        long timeMs = Math.max(1, config.getMoveTimeMs() - spentMs);
+                        budget.limitTime(timeMs);
                     }
                 }
+                return;
             }
+            cancel();
         }
 
-        setMoveFrom(new TilePosition(oldX, oldY));
-        setMoveTo(new TilePosition(newX, newY));
-
-        if (oldX == -1) {
-            return null;
-        }
+        SearchBudget limits = new SearchBudget(config.getMoveTimeMs(), config.getNodeLimit());
+        budget = limits;
+        int current = ++generation;
+        engine.execute(() -> {
+            if (current != generation) return;
 
-        return util.movePiece(board, board[oldX][oldY].getPiece(), oldX, oldY, newX, newY);
+            int bestMove = think(position, limits);
+            Platform.runLater(() -> {
+                if (current == generation) {
+                    finish(board, bestMove, onMove);
+                }
+            });
+        });
     }
 
-    private int minimax(Tile[][] board, int depth,
-                        int alpha, int beta, boolean isMaximizing) {
-        int score = 0;
-        int bestScore = 0;
-        PieceType winner = util.getWinner(board);
-
-        if (depth == 0) {
-            return getScore(board, PieceType.WHITE);
+    /**
+     * Plays a move, reports it and starts pondering on the human's turn.
+     */
+    private void finish(Tile[][] board, int bestMove, Consumer<MoveResult> onMove) {
+        MoveResult result = play(board, bestMove);
+        onMove.accept(result);
+        if (result != null && config.isPonder()) {
+            ponder(board, bestMove);
         }
+    }
 
-        if (winner != null) {
-            if (winner == PieceType.WHITE) {
-                return Integer.MAX_VALUE - 1;
-            }
-            else if (winner == PieceType.RED) {
-                return Integer.MIN_VALUE + 1;
-            }
-            else {
-                if (isMaximizing)
-                    return Integer.MIN_VALUE + 1; // last move was red
-                else
-                    return Integer.MAX_VALUE - 1; // otherwise
-            }
+    /**
+     * Starts searching, without a time budget, the position the human is
+     * most likely to leave to the machine.
+     *
+     * @param board the game board, after the machine's move
+     * @param lastMove the move the machine just played
+     */
+    private void ponder(Tile[][] board, int lastMove) {
+        Board position = util.snapshot(board, PieceType.RED);
+
+        /*
+         * The principal variation holds the reply the search expected. The
+         * Monte Carlo search has none, and ponders on its own move; the
+         * tree it grows is kept for the reply.
+         */
+        int[] pv = search != null ? search.getBest().getPv() : new int[0];
+        if (pv.length >= 2 && pv[0] == lastMove) {
+            position.makeMove(Move.from(pv[1]), Move.to(pv[1]));
         }
 
-        if (isMaximizing) {
-            bestScore = Integer.MIN_VALUE;
-            boolean breakFlag = false;
-
-            for (int i = 0;  i < TILES && !breakFlag; i++) {
-                for (int j = 0; j < TILES && !breakFlag; j++) {
-                    if (!util.hasPieceOnXY(board, i, j, PieceType.WHITE)) continue;
-                    Piece piece = board[i][j].getPiece();
-                    piece.setAvailableMoves(util.availableMoves(board, i, j));
-                    ArrayList<TilePosition> availableMoves = piece.getAvailableMoves();
-
-                    /*
-                     * Move piece to all available positions, calculate
-                     * the scores for each move, and store the best score.
-                     */
-                    for (TilePosition pos : availableMoves) {
-                        // Store the piece that might get killed in the move
-                        Piece otherPiece = board[pos.getX()][pos.getY()].getPiece();
-
-                        // Move piece to a valid tile
-                        board[i][j].setPiece(null);
-                        board[pos.getX()][pos.getY()].setPiece(piece);
-
-                        // Calculate the score of the new game state
-                        score = minimax(board, depth - 1, alpha, beta, false);
-
-                        // Move piece to its previous tile
-                        board[i][j].setPiece(piece);
-                        board[pos.getX()][pos.getY()].setPiece(null);
-
-                        // Restore the piece that might have gotten killed in the move
-                        board[pos.getX()][pos.getY()].setPiece(otherPiece);
-
-                        if (score > bestScore) bestScore = score;
-                        if (score > alpha) alpha = score;
-                        if (beta <= alpha) breakFlag = true;
-                    }
-
+        ponderPosition = position;
+        ponderStart = System.nanoTime();
+        ponderDone = false;
+        ponderOnMove = null;
+
+        Board copy = new Board(position);
+        SearchBudget limits = new SearchBudget(0, config.getNodeLimit());
+        budget = limits;
+        int current = ++generation;
+        engine.execute(() -> {
+            if (current != generation) return;
+
+            int bestMove = think(copy, limits);
+            Platform.runLater(() -> {
+                if (current != generation) return;
+
+                if (ponderOnMove != null) {
+                    Consumer<MoveResult> onMove = ponderOnMove;
+                    ponderOnMove = null;
+                    finish(board, bestMove, onMove);
                 }
-            }
-        }
-        else {
-            bestScore = Integer.MAX_VALUE;
-            boolean breakFlag = false;
-
-            for (int i = 0;  i < TILES && !breakFlag; i++) {
-                for (int j = 0; j < TILES && !breakFlag; j++) {
-                    if (!util.hasPieceOnXY(board, i, j, PieceType.RED)) continue;
-                    Piece piece = board[i][j].getPiece();
-                    piece.setAvailableMoves(util.availableMoves(board, i, j));
-                    ArrayList<TilePosition> availableMoves = piece.getAvailableMoves();
-
-                    /*
-                     * Move piece to all available positions, calculate
-                     * the scores for each move, and store the best score.
-                     */
-                    for (TilePosition pos : availableMoves) {
-                        // Store the piece that might get killed in the move
-                        Piece otherPiece = board[pos.getX()][pos.getY()].getPiece();
-
-                        // Move piece to a valid tile
-                        board[i][j].setPiece(null);
-                        board[pos.getX()][pos.getY()].setPiece(piece);
-
-                        // Calculate the score of the new game state
-                        score = minimax(board, depth - 1, alpha, beta, true);
-
-                        // Move piece to its previous tile
-                        board[i][j].setPiece(piece);
-                        board[pos.getX()][pos.getY()].setPiece(null);
-
-                        // Restore the piece that might have gotten killed in the move
-                        board[pos.getX()][pos.getY()].setPiece(otherPiece);
-
-                        if (score < bestScore) bestScore = score;
-                        if (score < alpha) alpha = score;
-                        if (beta <= alpha) breakFlag = true;
-                    }
-
+                else {
+                    // Finished before the human moved; kept in case the reply matches
+                    ponderDone = true;
+                    ponderMove = bestMove;
                 }
-            }
-        }
+            });
+        });
+    }
 
-        return bestScore;
+    private MoveResult machineMoveMiniMax(Tile[][] board) {
+        SearchBudget limits = new SearchBudget(config.getMoveTimeMs(), config.getNodeLimit());
+        budget = limits;
+        return play(board, think(util.snapshot(board, PieceType.WHITE), limits));
     }
 
     /**
-     * Returns a heuristic score of the game state.
+     * Searches a position for the best move of the side to move, with
+     * alpha-beta or Monte Carlo search, unless the opening book or the
+     * tablebase has a move for it.
      *
-     * @param board the game board
-     * @param side the side for which the score is to be calculated
-     * @return the heuristic score of the game state
+     * @param position the game position
+     * @param limits the limits of the search
+     * @return the best move found, or Move.NONE if there is no legal move
      */
-    public int getScore(Tile[][] board, PieceType side) {
-        int weightOfWeight        =  1;
-        int weightOfDensity       = -1;
-        int weightOfArea          = -1;
-        int weightOfMobility      =  1;
-        int weightOfConnectedness =  1;
-        int weightOfQuadCount     =  1;
-
-        return weightOfWeight * getTotalWeight(board, side)
-                + weightOfDensity * getDensityScore(board, side)
-                + weightOfArea * getArea(board, side)
-                + weightOfMobility * getMobility(board, side)
-                + weightOfConnectedness * getConnectedness(board, side)
-                + weightOfQuadCount * getQuadCount(board, side);
-    }
-
-    private int getTotalWeight(Tile[][] board, PieceType side) {
-        int weight = 0;
-
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (util.hasPieceOnXY(board, i, j, side)) {
-                    int z = (8 - TILES) / 2;
-                    weight += GameUtil.pieceSquareTable[i + z][j + z];
-                }
-            }
+    private int think(Board position, SearchBudget limits) {
+        if (book != null) {
+            int move = book.probe(position);
+            if (move != Move.NONE) return move;
         }
-
-        return weight;
-    }
-
-    private TilePosition getCenterOfMass(Tile[][] board, PieceType side) {
-        int x = 0;
-        int y = 0;
-        int count = 0;
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (util.hasPieceOnXY(board, i, j, side)) {
-                    count++;
-                    x += i;
-                    y += j;
-                }
-            }
+        if (tablebase != null) {
+            int move = tablebase.bestMove(position);
+            if (move != Move.NONE) return move;
         }
 
-        return new TilePosition((x / count), (y / count));
-    }
-
-    private int getDensityScore(Tile[][] board, PieceType side) {
-        TilePosition centerOfMass = getCenterOfMass(board, side);
-        int cx = centerOfMass.getX();
-        int cy = centerOfMass.getY();
-        int d = 0;
-
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (util.hasPieceOnXY(board, i, j, side)) {
-                    int dx = Math.abs(cx - i);
-                    int dy = Math.abs(cy - j);
-                    d += Math.sqrt(dx * dx + dy * dy);
-                }
-            }
+        if (mcts != null) {
+            return mcts.run(position, limits);
         }
 
-        return d;
+        table.newSearch();
+        return search.run(position, config.getMaxDepth(), limits);
     }
 
-    private int getArea(Tile[][] board, PieceType side) {
-        int fx = Integer.MAX_VALUE;
-        int fy = Integer.MAX_VALUE;
-        int lx = Integer.MIN_VALUE;
-        int ly = Integer.MIN_VALUE;
-
-        for (int y = 0; y < TILES; y++) {
-            for (int x = 0; x < TILES; x++) {
-                if (util.hasPieceOnXY(board, x, y, side)) {
-                    fx = Math.min(fx, x);
-                    fy = Math.min(fy, y);
-                    lx = Math.max(lx, x);
-                    ly = Math.max(ly, y);
-                }
-            }
+    /**
+     * Plays a move found by the search on the game board.
+     *
+     * @param board the game board
+     * @param bestMove the move, or Move.NONE
+     * @return the result of the move, or null if there is no move
+     */
+    private MoveResult play(Tile[][] board, int bestMove) {
+        if (bestMove == Move.NONE) {
+            setMoveFrom(new TilePosition(-1, -1));
+            setMoveTo(new TilePosition(-1, -1));
+            return null;
         }
 
-        int len =  Math.abs(fx - lx);
-        int wid = Math.abs(fy - ly);
+        int oldX = Board.colOf(Move.from(bestMove));
+        int oldY = Board.rowOf(Move.from(bestMove));
+        int newX = Board.colOf(Move.to(bestMove));
+        int newY = Board.rowOf(Move.to(bestMove));
+        setMoveFrom(new TilePosition(oldX, oldY));
+        setMoveTo(new TilePosition(newX, newY));
 
-        return len * wid;
+        return util.movePiece(board, board[oldX][oldY].getPiece(), oldX, oldY, newX, newY);
     }
 
-    private int getMobility(Tile[][] board, PieceType side) {
-        ArrayList<TilePosition> availableTiles = new ArrayList<>();
-        ArrayList<TilePosition> tmp = new ArrayList<>();
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (util.hasPieceOnXY(board, i, j, side)) {
-                    tmp = util.availableMoves(board, i, j);
-                    if (!availableTiles.containsAll(tmp))
-                        availableTiles.addAll(tmp);
-                }
-            }
-        }
-
-        return availableTiles.size();
+    /**
+     * Stops a search in progress; the machine then plays the best move
+     * found so far.
+     */
+    public void stop() {
+        SearchBudget limits = budget;
+        if (limits != null) limits.stop();
     }
 
-    private int getConnectedness(Tile[][] board, PieceType side) {
-        int max = Integer.MIN_VALUE;
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                if (util.hasPieceOnXY(board, i, j, side)) {
-                    TilePosition pos = new TilePosition(i, j);
-                    max = Math.max(max, util.ctgPcsAt(board, side, pos));
-                }
-            }
-        }
-
-        return max;
+    /**
+     * Abandons a search started by {@link #makeMoveAsync}, or a ponder
+     * search; its move is not played. Must be called on the JavaFX
+     * Application Thread.
+     */
+    public void cancel() {
+        generation++;
+        stop();
+        ponderPosition = null;
+        ponderOnMove = null;
     }
 
-    private int getQuadCount(Tile[][] board, PieceType side) {
-        int total = 0;
-        int count = 0;
-
-        for (int i = 0; i < TILES; i++) {
-            for (int j = 0; j < TILES; j++) {
-                count = 0;
-
-                int[] intI = { i, i + 1 };
-                int[] intJ = { j, j + 1 };
-
-                for (int k = 0; k < 2; k++) {
-                    for (int l = 0; l < 2; l++) {
-                        if (util.hasPieceOnXY(board, intI[k], intJ[l], side)) {
-                            count++;
-                        }
-                    }
-                }
-
-                if (count >= 3) {
-                    total += count;
-                }
-            }
-        }
-
-        return total;
+    /**
+     * Cancels any search and lets the engine thread end.
+     */
+    public void shutdown() {
+        cancel();
+        engine.shutdownNow();
+        if (search != null) search.shutdown();
+        if (mcts != null) mcts.shutdown();
     }
 }
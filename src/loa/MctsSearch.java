@@ -0,0 +1,527 @@
+package loa;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo tree search over a {@link Board}, on several threads
+ * sharing one tree.
+ * <p>
+ * Every playout walks down the tree by UCT, to the child with the best
+ * mean result plus a bonus for having been tried less than its
+ * siblings, then plays the game out with random moves from the node it
+ * stops at. Two moves are drawn and the one that takes its piece nearer
+ * the centre is played, or the capture. A playout that runs too long
+ * goes to the side whose largest group holds more of its pieces. The
+ * result is added to every node on the way down, and the move played is
+ * the one tried most at the root.
+ * <p>
+ * The threads take no locks. Visits and results are atomic, and a visit
+ * is counted on the way down, before its result is known, so the other
+ * threads see it as a loss until then and spread out over the tree. A
+ * node is expanded, once it has been visited a few times, by the thread
+ * that wins a compare-and-set on its state.
+ * <p>
+ * The nodes live in arrays of a fixed size set by the memory budget, a
+ * node's children side by side, and no node is an object of its own.
+ * The tree is kept from one search to the next: the next search starts
+ * from the node of the position two plies on, and the nodes outside it
+ * are squeezed out. When the arrays are full the tree stops growing, and
+ * the playouts go on from its leaves.
+ */
+public class MctsSearch {
+    /** Bytes a node takes in the arrays. */
+    private static final int NODE_BYTES = 24;
+
+    /** States of a node that has no children: a leaf, one being expanded, and the end of a game. */
+    private static final int LEAF = 0, EXPANDING = -1, TERMINAL = -2;
+
+    /** Weight of the bonus for having been tried less. */
+    private static final double EXPLORATION = 1.0;
+
+    /** Visits a node needs before it is expanded. */
+    private static final int EXPAND_VISITS = 8;
+
+    /** Plies after which a playout is decided by the groups. */
+    private static final int PLAYOUT_PLIES = 80;
+
+    /** Deepest the walk down the tree goes. */
+    private static final int MAX_TREE_DEPTH = 128;
+
+    /** Extra weight of a capture when a playout picks its move. */
+    private static final int CAPTURE_BONUS = 40;
+
+    /** Playouts of a search given neither a time nor a playout budget. */
+    private static final long DEFAULT_PLAYOUTS = 100_000;
+
+    private final int capacity;
+
+    /** Move into every node, and index of its first child. */
+    private final int[] move;
+    private final int[] firstChild;
+
+    /** Number of children of every node, or LEAF, EXPANDING or TERMINAL. */
+    private final AtomicIntegerArray state;
+
+    /** Visits of every node, and results in half points for the side that moved into it. */
+    private final AtomicIntegerArray visits;
+    private final AtomicLongArray value;
+
+    /** Index of the next free node. */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /** Nodes kept when the tree is squeezed, one bit each. */
+    private final long[] live;
+
+    private int root;
+
+    /** Position of the root, to find the next root in. */
+    private Board rootBoard;
+
+    private final int threads;
+    private final ExecutorService pool;
+    private final SplittableRandom seeds = new SplittableRandom();
+
+    /** The limits of the running search, or of the last one. */
+    private volatile SearchBudget budget = new SearchBudget(0, 0);
+
+    /** The playouts of a search with no budget, or 0 if it has one. */
+    private long defaultLimit;
+    private final AtomicLong playouts = new AtomicLong();
+
+    /**
+     * Creates the tree and the helper threads.
+     *
+     * @param config the settings of the engine: the memory budget of the
+     *               tree, and the number of threads, the calling one
+     *               included
+     */
+    public MctsSearch(EngineConfig config) {
+        capacity = (int) Math.max(2 * MoveGenerator.MAX_MOVES,
+                Math.min(Integer.MAX_VALUE - 64, (long) config.getTreeSizeMb() * 1024 * 1024 / NODE_BYTES));
+        move = new int[capacity];
+        firstChild = new int[capacity];
+        state = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+        value = new AtomicLongArray(capacity);
+        live = new long[(capacity + 63) / 64];
+
+        threads = Math.max(1, config.getThreads());
+        pool = threads == 1 ? null : Executors.newFixedThreadPool(threads - 1, r -> {
+            Thread thread = new Thread(r, "loa-mcts-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Searches a position for the best move of the side to move.
+     *
+     * @param board the game position, left as it was on return
+     * @param timeMs the time budget in milliseconds, or 0 for none
+     * @param playoutLimit the playout budget, or 0 for none; with neither
+     *                     budget, a search runs 100000 playouts
+     * @return the best move found, or Move.NONE if there is no legal move
+     */
+    public int run(Board board, long timeMs, long playoutLimit) {
+        return run(board, new SearchBudget(timeMs, playoutLimit));
+    }
+
+    /**
+     * Searches a position for the best move of the side to move, under a
+     * budget made by the caller, so it can be stopped or limited before
+     * the search starts.
+     *
+     * @param board the game position, left as it was on return
+     * @param budget the limits of the search, counting the playouts of all
+     *               threads; if it has no limits when the search starts,
+     *               the search runs 100000 playouts
+     * @return the best move found, or Move.NONE if there is no legal move
+     */
+    public int run(Board board, SearchBudget budget) {
+        this.budget = budget;
+        this.defaultLimit = budget.isUnlimited() ? DEFAULT_PLAYOUTS : 0;
+        playouts.set(0);
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateMoves(board, moves, 0);
+        if (count <= 1) {
+            return count == 0 ? Move.NONE : moves[0];
+        }
+
+        reroot(board);
+        if (state.get(root) <= 0) {
+            state.set(root, LEAF);
+            if (expand(root, board, moves) <= 0) return moves[0];
+        }
+
+        Future<?>[] futures = new Future<?>[threads - 1];
+        for (int i = 0; i < futures.length; i++) {
+            Board copy = new Board(board);
+            SplittableRandom random = seeds.split();
+            futures[i] = pool.submit(() -> work(copy, random));
+        }
+        work(board, seeds.split());
+
+        // The budget that ended the main thread's playouts ends the helpers' too
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+        }
+
+        return move[bestChild()];
+    }
+
+    /**
+     * Runs playouts until a budget runs out or the search is stopped.
+     */
+    private void work(Board board, SplittableRandom random) {
+        int[] path = new int[MAX_TREE_DEPTH + 1];
+        int[] made = new int[MAX_TREE_DEPTH + PLAYOUT_PLIES];
+        boolean[] captured = new boolean[made.length];
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        PieceType rootSide = board.getSideToMove();
+
+        while (true) {
+            long done = playouts.get();
+            if (budget.isSpent(done) || (defaultLimit != 0 && done >= defaultLimit)) {
+                break;
+            }
+
+            // Down the tree, counting every visit at once
+            int node = root;
+            int depth = 0;
+            path[0] = node;
+            visits.incrementAndGet(node);
+            while (true) {
+                int s = state.get(node);
+                if (s == LEAF && depth < MAX_TREE_DEPTH && visits.get(node) > EXPAND_VISITS) {
+                    s = expand(node, board, moves);
+                }
+                if (s <= 0) break;
+
+                node = select(node, s);
+                captured[depth] = board.makeMove(Move.from(move[node]), Move.to(move[node]));
+                made[depth++] = move[node];
+                path[depth] = node;
+                visits.incrementAndGet(node);
+            }
+
+            PieceType winner = playout(board, moves, random, made, captured, depth);
+            for (int d = depth - 1; d >= 0; d--) {
+                board.unmakeMove(Move.from(made[d]), Move.to(made[d]), captured[d]);
+            }
+
+            // The node at an odd depth was moved into by the side to move at the root
+            for (int d = 1; d <= depth; d++) {
+                PieceType mover = (d & 1) == 1 ? rootSide : Board.opponent(rootSide);
+                value.addAndGet(path[d], winner == PieceType.NONE ? 1 : winner == mover ? 2 : 0);
+            }
+            playouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the child of a node with the best mean result plus bonus.
+     */
+    private int select(int node, int count) {
+        int first = firstChild[node];
+        double logVisits = Math.log(Math.max(1, visits.get(node)));
+        int best = first;
+        double bestScore = Double.NEGATIVE_INFINITY;
+
+        for (int child = first; child < first + count; child++) {
+            int n = visits.get(child);
+            if (n == 0) return child;
+
+            double score = value.get(child) / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Gives a node its children, unless another thread is doing so, the
+     * game is over in it or the arrays are full.
+     *
+     * @return the new state of the node
+     */
+    private int expand(int node, Board board, int[] moves) {
+        if (!state.compareAndSet(node, LEAF, EXPANDING)) {
+            return state.get(node);
+        }
+
+        int count = MoveGenerator.generateMoves(board, moves, 0);
+        if (board.getWinner() != null || count == 0) {
+            state.set(node, TERMINAL);
+            return TERMINAL;
+        }
+
+        // Checked first so the index cannot run far past the end
+        if (next.get() > capacity - count) {
+            state.set(node, LEAF);
+            return LEAF;
+        }
+        int first = next.getAndAdd(count);
+        if (first > capacity - count) {
+            state.set(node, LEAF);
+            return LEAF;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int child = first + i;
+            move[child] = moves[i];
+            firstChild[child] = 0;
+            visits.set(child, 0);
+            value.set(child, 0);
+            state.set(child, LEAF);
+        }
+        firstChild[node] = first;
+
+        // Publishes the children to the threads that read the state
+        state.set(node, count);
+        return count;
+    }
+
+    /**
+     * Plays random moves until the game is over or runs too long, and
+     * takes them back.
+     *
+     * @return the side that won, or NONE if the playout was cut off even
+     */
+    private PieceType playout(Board board, int[] moves, SplittableRandom random,
+                              int[] made, boolean[] captured, int start) {
+        Geometry geometry = board.getGeometry();
+        PieceType winner;
+        int top = start;
+
+        while (true) {
+            PieceType side = board.getSideToMove();
+            PieceType connected = board.getWinner();
+            if (connected != null) {
+                // Both sides connected counts as a win for the side that just moved
+                winner = connected == PieceType.NONE ? Board.opponent(side) : connected;
+                break;
+            }
+            int count = MoveGenerator.generateMoves(board, moves, 0);
+            if (count == 0) {
+                winner = Board.opponent(side);
+                break;
+            }
+            if (top - start >= PLAYOUT_PLIES) {
+                winner = leader(board);
+                break;
+            }
+
+            int a = moves[random.nextInt(count)];
+            int b = moves[random.nextInt(count)];
+            int m = gain(geometry, a) >= gain(geometry, b) ? a : b;
+            captured[top] = board.makeMove(Move.from(m), Move.to(m));
+            made[top++] = m;
+        }
+
+        while (top > start) {
+            top--;
+            board.unmakeMove(Move.from(made[top]), Move.to(made[top]), captured[top]);
+        }
+
+        return winner;
+    }
+
+    private static int gain(Geometry geometry, int m) {
+        return geometry.squareWeight[Move.to(m)] - geometry.squareWeight[Move.from(m)]
+                + (Move.isCapture(m) ? CAPTURE_BONUS : 0);
+    }
+
+    /**
+     * Returns the side whose largest group holds more of its pieces, or
+     * NONE if neither does.
+     */
+    private static PieceType leader(Board board) {
+        long red = (long) board.largestGroup(PieceType.RED) * board.count(PieceType.WHITE);
+        long white = (long) board.largestGroup(PieceType.WHITE) * board.count(PieceType.RED);
+        return red > white ? PieceType.RED : white > red ? PieceType.WHITE : PieceType.NONE;
+    }
+
+    /**
+     * Returns the child of the root tried most, the better one on a tie.
+     */
+    private int bestChild() {
+        int first = firstChild[root];
+        int best = first;
+        for (int child = first + 1; child < first + state.get(root); child++) {
+            if (visits.get(child) > visits.get(best)
+                    || (visits.get(child) == visits.get(best) && value.get(child) > value.get(best))) {
+                best = child;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Makes the node of a position the root, keeping only its subtree, or
+     * starts a new tree if the position is not within two plies of the
+     * old root.
+     */
+    private void reroot(Board board) {
+        int found = rootBoard != null && rootBoard.getGeometry() == board.getGeometry() ? find(board) : -1;
+        if (found < 0) {
+            root = 0;
+            move[0] = Move.NONE;
+            firstChild[0] = 0;
+            state.set(0, LEAF);
+            visits.set(0, 0);
+            value.set(0, 0);
+            next.set(1);
+        } else {
+            compact(found);
+        }
+        rootBoard = new Board(board);
+    }
+
+    /**
+     * Returns the node of a position among the root and its children and
+     * grandchildren, or -1 if there is none.
+     */
+    private int find(Board board) {
+        long key = board.getHash();
+        if (rootBoard.getHash() == key) return root;
+
+        int found = -1;
+        int children = state.get(root);
+        for (int child = firstChild[root]; found < 0 && child < firstChild[root] + Math.max(0, children); child++) {
+            boolean c = rootBoard.makeMove(Move.from(move[child]), Move.to(move[child]));
+            if (rootBoard.getHash() == key) {
+                found = child;
+            }
+            int grandchildren = state.get(child);
+            for (int g = firstChild[child]; found < 0 && g < firstChild[child] + Math.max(0, grandchildren); g++) {
+                boolean cg = rootBoard.makeMove(Move.from(move[g]), Move.to(move[g]));
+                if (rootBoard.getHash() == key) {
+                    found = g;
+                }
+                rootBoard.unmakeMove(Move.from(move[g]), Move.to(move[g]), cg);
+            }
+            rootBoard.unmakeMove(Move.from(move[child]), Move.to(move[child]), c);
+        }
+
+        return found;
+    }
+
+    /**
+     * Slides the subtree of a node down to the start of the arrays, in
+     * order, and makes the node the root.
+     * <p>
+     * Children always come after their parent, so one pass in index order
+     * finds the whole subtree, and a node never moves onto one not yet
+     * moved.
+     */
+    private void compact(int newRoot) {
+        int used = Math.min(next.get(), capacity);
+        Arrays.fill(live, 0);
+        live[newRoot >>> 6] |= 1L << newRoot;
+        for (int i = newRoot; i < used; i++) {
+            int s = state.get(i);
+            if ((live[i >>> 6] & 1L << i) != 0 && s > 0) {
+                for (int child = firstChild[i]; child < firstChild[i] + s; child++) {
+                    live[child >>> 6] |= 1L << child;
+                }
+            }
+        }
+
+        // Number of live nodes before the start of every word
+        int[] before = new int[live.length + 1];
+        for (int w = 0; w < live.length; w++) {
+            before[w + 1] = before[w] + Long.bitCount(live[w]);
+        }
+
+        int kept = 0;
+        for (int i = newRoot; i < used; i++) {
+            if ((live[i >>> 6] & 1L << i) == 0) continue;
+
+            int s = state.get(i);
+            int to = kept++;
+            move[to] = move[i];
+            firstChild[to] = s > 0 ? rank(before, firstChild[i]) : 0;
+            state.set(to, s);
+            visits.set(to, visits.get(i));
+            value.set(to, value.get(i));
+        }
+
+        root = 0;
+        next.set(kept);
+    }
+
+    private int rank(int[] before, int node) {
+        return before[node >>> 6] + Long.bitCount(live[node >>> 6] & ((1L << node) - 1));
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible.
+     * <p>
+     * Safe to call from any thread; {@link #run} then returns the move
+     * tried most so far. A search that has not started yet is not
+     * affected; stop its budget instead.
+     */
+    public void stop() {
+        budget.stop();
+    }
+
+
+    /**
+     * Returns the number of playouts of the last search, by all threads.
+     */
+    public long getPlayouts() {
+        return playouts.get();
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     */
+    public int getTreeSize() {
+        return Math.min(next.get(), capacity);
+    }
+
+    /**
+     * Returns the most nodes the tree can hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the visits of the root, those of earlier searches included.
+     */
+    public int getRootVisits() {
+        return visits.get(root);
+    }
+
+    /**
+     * Lets the helper threads end.
+     */
+    public void shutdown() {
+        stop();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
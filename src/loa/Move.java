@@ -0,0 +1,56 @@
+package loa;
+
+/**
+ * Moves packed into a primitive int.
+ * <p>
+ * Bits 0-5 hold the square the piece moves from, bits 6-11 the square it
+ * moves to, and bit 12 is set when the move captures an opponent piece.
+ * A packed move always fits in 16 bits.
+ */
+public final class Move {
+    /** A value no generated move can take. */
+    public static final int NONE = 0;
+
+    private static final int CAPTURE = 1 << 12;
+
+    private Move() {
+    }
+
+    public static int encode(int from, int to, boolean capture) {
+        return from | (to << 6) | (capture ? CAPTURE : 0);
+    }
+
+    public static int from(int move) {
+        return move & 0x3f;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3f;
+    }
+
+    public static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    /**
+     * Reads a move written by {@link #toString(int)}.
+     *
+     * @param board the position the move is played in
+     * @param text the move, as col and row of the from and to squares
+     * @return the move, or NONE if it is not a legal move in the position
+     */
+    public static int parse(Board board, String text) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateMoves(board, moves, 0);
+        for (int k = 0; k < count; k++) {
+            if (toString(moves[k]).equals(text)) return moves[k];
+        }
+
+        return NONE;
+    }
+
+    public static String toString(int move) {
+        return "" + Board.colOf(from(move)) + Board.rowOf(from(move))
+                + "-" + Board.colOf(to(move)) + Board.rowOf(to(move));
+    }
+}
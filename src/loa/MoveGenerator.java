@@ -0,0 +1,141 @@
+package loa;
+
+/**
+ * Fast move generator for the search.
+ * <p>
+ * A piece moves exactly as many tiles as there are pieces on the line it
+ * moves along, which the {@link Board} keeps counted. For every square,
+ * direction and distance the target square and the mask of the squares
+ * jumped over are computed once per board size by {@link Geometry}, so
+ * checking a move comes down to two mask tests: no enemy on the path, no
+ * own piece on the target.
+ * <p>
+ * Moves are produced in the same order as {@link ReferenceRules#availableMoves}
+ * returns them when called piece by piece over {@code board[x][y]}.
+ */
+public final class MoveGenerator {
+    /**
+     * Upper bound of the number of moves in any position. It leaves room for
+     * the one slot past the last move the generator may write to.
+     */
+    public static final int MAX_MOVES = 4 * (Geometry.MAX_SIZE - 2) * 8;
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Writes all moves of the side to move into a buffer.
+     *
+     * @param board the game position
+     * @param moves the buffer to write the packed moves into
+     * @param offset the index of the first move in the buffer
+     * @return the index after the last move written
+     */
+    public static int generateMoves(Board board, int[] moves, int offset) {
+        PieceType side = board.getSideToMove();
+        long own = board.getPieces(side);
+        long opp = board.getPieces(Board.opponent(side));
+
+        return generate(board, own, opp, own, moves, offset);
+    }
+
+    /**
+     * Writes the moves of a single piece into a buffer.
+     *
+     * @param board the game position
+     * @param from the square of the piece
+     * @param own the mask of the pieces on the side of the piece
+     * @param opp the mask of the opponent pieces
+     * @param moves the buffer to write the packed moves into
+     * @param offset the index of the first move in the buffer
+     * @return the index after the last move written
+     */
+    public static int generatePieceMoves(Board board, int from, long own, long opp,
+                                         int[] moves, int offset) {
+        return generate(board, 1L << from, opp, own, moves, offset);
+    }
+
+    /**
+     * Returns the squares a single piece can move to.
+     *
+     * @param board the game position
+     * @param from the square of the piece
+     * @param own the mask of the pieces on the side of the piece
+     * @param opp the mask of the opponent pieces
+     * @return the mask of the target squares
+     */
+    public static long pieceTargets(Board board, int from, long own, long opp) {
+        Geometry geometry = board.getGeometry();
+        int[] target = geometry.target;
+        long[] between = geometry.between;
+        long targets = 0;
+        int base = from * 8 * Geometry.STRIDE;
+
+        for (int axis = 0; axis < Board.AXES; axis++) {
+            int dist = board.lineCount(from, axis);
+
+            for (int dir = 2 * axis; dir < 2 * axis + 2; dir++) {
+                int idx = base + dir * Geometry.STRIDE + dist;
+                long toBit = 1L << target[idx];
+                long blocked = (between[idx] & opp) | (own & toBit);
+                targets |= toBit & ~((blocked | -blocked) >> 63);
+            }
+        }
+
+        return targets;
+    }
+
+    /**
+     * Writes all capturing moves of the side to move into a buffer.
+     *
+     * @param board the game position
+     * @param moves the buffer to write the packed moves into
+     * @param offset the index of the first move in the buffer
+     * @return the index after the last move written
+     */
+    public static int generateCaptures(Board board, int[] moves, int offset) {
+        PieceType side = board.getSideToMove();
+        long own = board.getPieces(side);
+        long opp = board.getPieces(Board.opponent(side));
+
+        return generate(board, own, opp, ~opp, moves, offset);
+    }
+
+    /**
+     * Writes the moves of the pieces whose path is clear of opponent pieces
+     * and whose target is not in the forbidden mask. Both directions of a
+     * line share its count, so they are checked together.
+     */
+    private static int generate(Board board, long pieces, long opp, long forbidden,
+                                int[] moves, int offset) {
+        Geometry geometry = board.getGeometry();
+        int[] target = geometry.target;
+        long[] between = geometry.between;
+        int n = offset;
+
+        for (long pcs = pieces; pcs != 0; pcs &= pcs - 1) {
+            int from = Long.numberOfTrailingZeros(pcs);
+            int base = from * 8 * Geometry.STRIDE;
+
+            for (int axis = 0; axis < Board.AXES; axis++, base += 2 * Geometry.STRIDE) {
+                int idx = base + board.lineCount(from, axis);
+
+                // Written unconditionally and kept only if the path and target are clear
+                int to = target[idx];
+                long toBit = 1L << to;
+                long blocked = (between[idx] & opp) | (forbidden & toBit);
+                moves[n] = Move.encode(from, to, (opp & toBit) != 0);
+                n += (int) ((blocked | -blocked) >>> 63) ^ 1;
+
+                idx += Geometry.STRIDE;
+                to = target[idx];
+                toBit = 1L << to;
+                blocked = (between[idx] & opp) | (forbidden & toBit);
+                moves[n] = Move.encode(from, to, (opp & toBit) != 0);
+                n += (int) ((blocked | -blocked) >>> 63) ^ 1;
+            }
+        }
+
+        return n;
+    }
+}
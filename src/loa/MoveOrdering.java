@@ -0,0 +1,157 @@
+package loa;
+
+/**
+ * Sorts the moves of a node so the ones most likely to cause a cutoff
+ * are searched first.
+ * <p>
+ * The order is: the hash move (or the move of the previous principal
+ * variation), then captures, then the two killer moves of the ply, then
+ * the other quiet moves by their history score. Killers and history are
+ * learnt from the quiet moves that caused cutoffs.
+ */
+public class MoveOrdering {
+    private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+    private static final int CAPTURE_SCORE = 1 << 30;
+    private static final int KILLER_SCORE = 1 << 29;
+
+    /** History scores are kept below this so they never reach the killers. */
+    private static final int HISTORY_MAX = 1 << 28;
+
+    /** Two killer moves per ply, the most recent first. */
+    private final int[][] killers = new int[Search.MAX_PLY + 1][2];
+
+    /** How often each quiet move caused a cutoff, weighted by depth. */
+    private final int[] history = new int[Geometry.SQUARES * Geometry.SQUARES];
+
+    /** Scores of the moves being sorted, one row per ply. */
+    private final int[][] scores = new int[Search.MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    /**
+     * Prepares for a new search: forgets the killers and ages the history.
+     */
+    public void newSearch() {
+        for (int[] pair : killers) {
+            pair[0] = Move.NONE;
+            pair[1] = Move.NONE;
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] >>= 1;
+        }
+        resetCounters();
+    }
+
+    /**
+     * Forgets the killers and the history altogether, so the next search
+     * orders its moves as if it were the first.
+     */
+    public void clear() {
+        newSearch();
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+    }
+
+    /**
+     * Clears the cutoff counters, leaving the killers and the history.
+     */
+    public void resetCounters() {
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+
+    /**
+     * Sorts the moves of a node, best first.
+     *
+     * @param moves the moves
+     * @param count the number of moves
+     * @param ply the ply of the node
+     * @param hashMove the move to search first, or Move.NONE
+     */
+    public void order(int[] moves, int count, int ply, int hashMove) {
+        int[] score = scores[ply];
+        int killer1 = killers[ply][0];
+        int killer2 = killers[ply][1];
+
+        for (int k = 0; k < count; k++) {
+            int move = moves[k];
+            if (move == hashMove) score[k] = HASH_MOVE_SCORE;
+            else if (Move.isCapture(move)) score[k] = CAPTURE_SCORE;
+            else if (move == killer1) score[k] = KILLER_SCORE + 1;
+            else if (move == killer2) score[k] = KILLER_SCORE;
+            else score[k] = history[historyIndex(move)];
+        }
+
+        // Insertion sort keeps generation order between equal scores
+        for (int k = 1; k < count; k++) {
+            int move = moves[k];
+            int s = score[k];
+            int j = k - 1;
+            while (j >= 0 && score[j] < s) {
+                moves[j + 1] = moves[j];
+                score[j + 1] = score[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            score[j + 1] = s;
+        }
+    }
+
+    /**
+     * Learns from a move that caused a cutoff.
+     *
+     * @param move the move
+     * @param index the position of the move in the sorted list
+     * @param ply the ply of the node
+     * @param depth the remaining depth of the node
+     */
+    public void recordCutoff(int move, int index, int ply, int depth) {
+        cutoffs++;
+        if (index == 0) firstMoveCutoffs++;
+
+        if (Move.isCapture(move)) return;
+
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+
+        int i = historyIndex(move);
+        history[i] += depth * depth;
+        if (history[i] >= HISTORY_MAX) {
+            for (int j = 0; j < history.length; j++) {
+                history[j] >>= 1;
+            }
+        }
+    }
+
+    private static int historyIndex(int move) {
+        return Move.from(move) * Geometry.SQUARES + Move.to(move);
+    }
+
+    /**
+     * Returns the number of nodes searched since the last new search that
+     * ended in a cutoff.
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the number of those cutoffs caused by the first move searched.
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Returns the share of cutoffs caused by the first move searched.
+     *
+     * @return a rate between 0 and 1, or 0 if there was no cutoff
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+}
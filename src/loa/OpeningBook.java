@@ -0,0 +1,194 @@
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Book moves for the first moves of the game, read straight from a
+ * memory-mapped file.
+ * <p>
+ * The file starts with a header of four ints: the magic number, the
+ * version of the format, the size of the board and the number of entries.
+ * Then come the entries, each a position hash (long), a packed move (int)
+ * and a weight (int), sorted by hash. Nothing is read on opening; a
+ * lookup is a binary search over the mapped entries.
+ * <p>
+ * When a position has several moves, one is picked at random in
+ * proportion to the weights, so the games do not all go the same way.
+ * A book is safe to use from several threads at once.
+ * <p>
+ * Books are written by {@link BookBuilder}.
+ */
+public final class OpeningBook {
+    /** "LOAB" in ASCII. */
+    private static final int MAGIC = 0x4C4F4142;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+
+    private final ByteBuffer entries;
+    private final int size;
+    private final int count;
+
+    private OpeningBook(ByteBuffer entries, int size, int count) {
+        this.entries = entries;
+        this.size = size;
+        this.count = count;
+    }
+
+    /**
+     * Maps a book file into memory.
+     *
+     * @param path the book file
+     * @return the book
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not an opening book: " + path);
+            }
+
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = buffer.getInt(12);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || channel.size() != HEADER_BYTES + (long) count * ENTRY_BYTES) {
+                throw new IOException("Not an opening book: " + path);
+            }
+
+            return new OpeningBook(buffer, buffer.getInt(8), count);
+        }
+    }
+
+    /**
+     * Writes a book file.
+     *
+     * @param path the book file, replaced if it exists
+     * @param size the size of the board the positions are on
+     * @param weights the weight of every move, by position hash; moves with
+     *                no weight are left out
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, int size, Map<Long, Map<Integer, Integer>> weights)
+            throws IOException {
+        TreeMap<Long, Map<Integer, Integer>> sorted = new TreeMap<>(weights);
+        int count = 0;
+        for (Map<Integer, Integer> moves : sorted.values()) {
+            for (int weight : moves.values()) {
+                if (weight > 0) count++;
+            }
+        }
+
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(count);
+            for (Map.Entry<Long, Map<Integer, Integer>> position : sorted.entrySet()) {
+                for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                    if (move.getValue() <= 0) continue;
+                    out.writeLong(position.getKey());
+                    out.writeInt(move.getKey());
+                    out.writeInt(move.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the board the book is for.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of moves in the book, over all positions.
+     */
+    public int getEntries() {
+        return count;
+    }
+
+    /**
+     * Picks a book move for a position.
+     *
+     * @param board the game position
+     * @return a legal move from the book, or Move.NONE if the position is
+     *         not in the book
+     */
+    public int probe(Board board) {
+        if (board.getGeometry().getSize() != size) {
+            return Move.NONE;
+        }
+
+        long key = board.getHash();
+        int first = find(key);
+        int total = 0;
+        int end = first;
+        for (; end < count && keyAt(end) == key; end++) {
+            total += weightAt(end);
+        }
+        if (total <= 0) {
+            return Move.NONE;
+        }
+
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        int move = Move.NONE;
+        for (int i = first; i < end; i++) {
+            pick -= weightAt(i);
+            if (pick < 0) {
+                move = moveAt(i);
+                break;
+            }
+        }
+
+        // Guards against another position with the same hash
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int n = MoveGenerator.generateMoves(board, moves, 0);
+        for (int k = 0; k < n; k++) {
+            if (moves[k] == move) return move;
+        }
+
+        return Move.NONE;
+    }
+
+    /**
+     * Returns the index of the first entry whose hash is not below a key.
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyAt(mid) < key) low = mid + 1;
+            else high = mid;
+        }
+
+        return low;
+    }
+
+    private long keyAt(int i) {
+        return entries.getLong(HEADER_BYTES + i * ENTRY_BYTES);
+    }
+
+    private int moveAt(int i) {
+        return entries.getInt(HEADER_BYTES + i * ENTRY_BYTES + 8);
+    }
+
+    private int weightAt(int i) {
+        return entries.getInt(HEADER_BYTES + i * ENTRY_BYTES + 12);
+    }
+}
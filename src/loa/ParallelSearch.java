@@ -0,0 +1,330 @@
+package loa;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a {@link Search} on several threads sharing one transposition table.
+ * <p>
+ * This is Lazy SMP: the main thread runs the normal search under the
+ * budgets, while helper threads search the same position without limits
+ * on their own copies of the board, until the main thread is done. Every
+ * other helper runs its iterations a ply deeper, so the threads do not
+ * all search the same depth at once and fill the shared table with
+ * results the main thread's next iteration needs. The move returned is
+ * that of the thread that completed the deepest iteration, the main one
+ * on a tie, so it is at least as good as a serial search to the same
+ * depth.
+ * <p>
+ * Every search is recorded as a {@link SearchEvent}, and the cost of its
+ * evaluation terms as an {@link EvaluationEvent}, while JDK Flight
+ * Recorder is running. The counters of the running search can be read
+ * from any thread, which is what {@link EngineStats} does.
+ */
+public class ParallelSearch {
+    private final Search main;
+    private final Search[] helpers;
+    private final ExecutorService pool;
+    private final TranspositionTable table;
+
+    /** The search whose move the last search returned. */
+    private volatile Search best;
+
+    /** Start and end of the last search, the end 0 while it runs. */
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    /** Searches run, and their nodes, capture nodes included. */
+    private volatile long searches;
+    private volatile long totalNodes;
+
+    /**
+     * Creates the searches and the helper threads, with the default
+     * evaluation weights.
+     *
+     * @param table the table shared by all threads
+     * @param config the settings of the engine, including the total number
+     *               of threads, the main one included
+     */
+    public ParallelSearch(TranspositionTable table, EngineConfig config) {
+        this(table, config, Evaluator.defaultWeights());
+    }
+
+    /**
+     * Creates the searches and the helper threads.
+     *
+     * @param table the table shared by all threads
+     * @param config the settings of the engine, including the total number
+     *               of threads, the main one included
+     * @param weights the evaluation weights, in the order of
+     *                {@link Evaluator#TERMS}
+     */
+    public ParallelSearch(TranspositionTable table, EngineConfig config, int[] weights) {
+        this.table = table;
+        main = new Search(new Evaluator(weights), table, config);
+        helpers = new Search[Math.max(0, config.getThreads() - 1)];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new Search(new Evaluator(weights), table, config);
+            // Helpers 1, 3, 5 and so on
+            helpers[i].setDepthOffset(i % 2 == 0 ? 1 : 0);
+        }
+        best = main;
+
+        pool = helpers.length == 0 ? null : Executors.newFixedThreadPool(helpers.length, r -> {
+            Thread thread = new Thread(r, "loa-search-helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Searches a position for the best move of the side to move.
+     *
+     * @param board the game position, left as it was on return
+     * @param maxDepth the deepest iteration to run
+     * @param timeMs the time budget in milliseconds, or 0 for none
+     * @param nodeLimit the node budget of the main thread, or 0 for none
+     * @return the best move found, or Move.NONE if there is no legal move
+     */
+    public int run(Board board, int maxDepth, long timeMs, long nodeLimit) {
+        return run(board, maxDepth, new SearchBudget(timeMs, nodeLimit));
+    }
+
+    /**
+     * Searches a position for the best move of the side to move, under a
+     * budget made by the caller, so it can be stopped or limited before
+     * the search starts.
+     *
+     * @param board the game position, left as it was on return
+     * @param maxDepth the deepest iteration to run
+     * @param budget the limits of the search, its nodes counted by the main
+     *               thread
+     * @return the best move found, or Move.NONE if there is no legal move
+     */
+    public int run(Board board, int maxDepth, SearchBudget budget) {
+        SearchEvent event = new SearchEvent();
+        EvaluationEvent evaluation = new EvaluationEvent();
+        main.setProfileTerms(evaluation.isEnabled());
+        long hits = event.isEnabled() ? table.getHits() : 0;
+        long misses = event.isEnabled() ? table.getMisses() : 0;
+        event.begin();
+        endNanos = 0;
+        startNanos = System.nanoTime();
+
+        /*
+         * A helper only clears its counters once it starts on the pool, so
+         * clear them here, or they would still show the last search.
+         */
+        main.resetCounters();
+        for (Search helper : helpers) {
+            helper.resetCounters();
+        }
+
+        // The helpers run until the main thread is done, even those not started by then
+        SearchBudget helping = new SearchBudget(0, 0);
+        Future<?>[] futures = new Future<?>[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            Search helper = helpers[i];
+            Board copy = new Board(board);
+            futures[i] = pool.submit(() -> helper.run(copy, maxDepth, helping));
+        }
+
+        int bestMove = main.run(board, maxDepth, budget);
+
+        helping.stop();
+        Search deepest = main;
+        for (int i = 0; i < helpers.length; i++) {
+            try {
+                futures[i].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+            if (helpers[i].getCompletedDepth() > deepest.getCompletedDepth()) {
+                deepest = helpers[i];
+            }
+        }
+        best = deepest;
+        bestMove = deepest.getBestMove();
+
+        endNanos = System.nanoTime();
+        searches++;
+        totalNodes += getNodes();
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = deepest.getCompletedDepth();
+            event.nodes = getNodes() - getQuiescenceNodes();
+            event.quiescenceNodes = getQuiescenceNodes();
+            event.threads = getThreads();
+            event.nodesPerSecond = getNodesPerSecond();
+            event.branchingFactor = main.getBranchingFactor();
+            event.cutoffRate = getCutoffRate();
+            event.firstMoveCutoffRate = getFirstMoveCutoffRate();
+            event.tableHits = table.getHits() - hits;
+            event.tableMisses = table.getMisses() - misses;
+            event.move = Move.toString(bestMove);
+            event.score = deepest.getBestScore();
+            event.commit();
+        }
+        if (evaluation.isEnabled() && main.getProfiledEvaluations() > 0) {
+            long[] nanos = main.getTermNanos();
+            double scale = (double) main.getEvaluations() / main.getProfiledEvaluations();
+            evaluation.evaluations = main.getEvaluations();
+            evaluation.profiledEvaluations = main.getProfiledEvaluations();
+            evaluation.weight = (long) (nanos[0] * scale);
+            evaluation.density = (long) (nanos[1] * scale);
+            evaluation.area = (long) (nanos[2] * scale);
+            evaluation.mobility = (long) (nanos[3] * scale);
+            evaluation.connectedness = (long) (nanos[4] * scale);
+            evaluation.quads = (long) (nanos[5] * scale);
+            evaluation.commit();
+        }
+
+        return bestMove;
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible. A search that has
+     * not started yet is not affected; stop its budget instead.
+     */
+    public void stop() {
+        main.stop();
+    }
+
+    /**
+     * Stops a running search and lets the helper threads end; the search
+     * cannot be run again.
+     */
+    public void shutdown() {
+        stop();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Returns the search run on the calling thread.
+     */
+    public Search getMain() {
+        return main;
+    }
+
+    /**
+     * Returns the search whose move the last search returned, which holds
+     * its score and principal variation.
+     */
+    public Search getBest() {
+        return best;
+    }
+
+    public int getThreads() {
+        return helpers.length + 1;
+    }
+
+    /**
+     * Returns the number of nodes searched by all threads in the last search,
+     * capture nodes past the horizon included.
+     */
+    public long getNodes() {
+        long nodes = main.getNodes() + main.getQuiescenceNodes();
+        for (Search helper : helpers) {
+            nodes += helper.getNodes() + helper.getQuiescenceNodes();
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Returns the number of capture nodes past the horizon searched by all
+     * threads in the last search.
+     */
+    public long getQuiescenceNodes() {
+        long qnodes = main.getQuiescenceNodes();
+        for (Search helper : helpers) {
+            qnodes += helper.getQuiescenceNodes();
+        }
+
+        return qnodes;
+    }
+
+    /**
+     * Returns the beta cutoffs per node before the horizon of all threads
+     * in the last search.
+     */
+    public double getCutoffRate() {
+        long cutoffs = main.getOrdering().getCutoffs();
+        long nodes = main.getNodes();
+        for (Search helper : helpers) {
+            cutoffs += helper.getOrdering().getCutoffs();
+            nodes += helper.getNodes();
+        }
+
+        return nodes > 0 ? (double) cutoffs / nodes : 0;
+    }
+
+    /**
+     * Returns the share of the beta cutoffs of all threads in the last
+     * search that were made by the first move searched.
+     */
+    public double getFirstMoveCutoffRate() {
+        long first = main.getOrdering().getFirstMoveCutoffs();
+        long cutoffs = main.getOrdering().getCutoffs();
+        for (Search helper : helpers) {
+            first += helper.getOrdering().getFirstMoveCutoffs();
+            cutoffs += helper.getOrdering().getCutoffs();
+        }
+
+        return cutoffs > 0 ? (double) first / cutoffs : 0;
+    }
+
+    /**
+     * Checks if a search is running.
+     */
+    public boolean isSearching() {
+        return startNanos != 0 && endNanos == 0;
+    }
+
+    /**
+     * Returns the time the running search has taken so far, or the last
+     * search took, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        long start = startNanos;
+        long end = endNanos;
+        if (start == 0) return 0;
+
+        return (end != 0 ? end : System.nanoTime()) - start;
+    }
+
+    /**
+     * Returns the nodes per second of the running or the last search, all
+     * threads together.
+     */
+    public long getNodesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed > 0 ? (long) (getNodes() * 1e9 / elapsed) : 0;
+    }
+
+    /**
+     * Returns the number of searches run.
+     */
+    public long getSearches() {
+        return searches;
+    }
+
+    /**
+     * Returns the nodes of all the searches run, capture nodes included.
+     */
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public TranspositionTable getTable() {
+        return table;
+    }
+}
@@ -0,0 +1,277 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the leaves of the tree of legal moves from a position, to check
+ * the move generators and measure their speed.
+ * <p>
+ * A won position ends the game, so it is a leaf: no move is made from it.
+ * The count can be taken with {@link MoveGenerator} or with the reference
+ * {@link ReferenceRules#availableMoves}, and broken down by root move.
+ * <p>
+ * Usage: {@code java loa.Perft [options] depth}, where the options are
+ * <ul>
+ *     <li>{@code --position "<position>"}: the position to start from, in the
+ *     format of {@link Board#parse(String)}; the starting position by default</li>
+ *     <li>{@code --size n}: start from the starting position on an n by n
+ *     board, 6 by default</li>
+ *     <li>{@code --generator fast|reference}: the generator to count with,
+ *     fast by default</li>
+ *     <li>{@code --divide}: print the count under every root move</li>
+ *     <li>{@code --threads n}: share the root moves between n threads</li>
+ *     <li>{@code --check}: count with both generators and compare the counts
+ *     under every root move; exits with status 1 if they differ</li>
+ * </ul>
+ */
+public final class Perft {
+    /** The move generators perft can run on. */
+    public enum Generator { FAST, REFERENCE }
+
+    private final Generator generator;
+
+    /** Moves of the node being expanded at every ply. */
+    private final int[][] moveStack = new int[Search.MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+
+    /**
+     * Creates a counter. Each counter must be used by one thread at a time.
+     *
+     * @param generator the move generator to count with
+     */
+    public Perft(Generator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Counts the leaves of the move tree to a depth.
+     *
+     * @param board the game position, left as it was on return
+     * @param depth the number of moves to look ahead, at most Search.MAX_PLY
+     * @return the number of move sequences of that length
+     */
+    public long perft(Board board, int depth) {
+        return perft(board, depth, 0);
+    }
+
+    private long perft(Board board, int depth, int ply) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (winner(board) != null) {
+            return 0;
+        }
+
+        int[] moves = moveStack[ply];
+        int count = generate(board, moves);
+        if (depth == 1) {
+            return count;
+        }
+
+        long nodes = 0;
+        for (int k = 0; k < count; k++) {
+            int from = Move.from(moves[k]);
+            int to = Move.to(moves[k]);
+            boolean captured = board.makeMove(from, to);
+            nodes += perft(board, depth - 1, ply + 1);
+            board.unmakeMove(from, to, captured);
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Writes the moves of the side to move into a buffer.
+     *
+     * @return the number of moves written
+     */
+    private int generate(Board board, int[] moves) {
+        if (generator == Generator.FAST) {
+            return MoveGenerator.generateMoves(board, moves, 0);
+        }
+
+        PieceType side = board.getSideToMove();
+        long opp = board.getPieces(Board.opponent(side));
+        int count = 0;
+        for (long pcs = board.getPieces(side); pcs != 0; pcs &= pcs - 1) {
+            int from = Long.numberOfTrailingZeros(pcs);
+            for (TilePosition pos : ReferenceRules.availableMoves(board, Board.colOf(from), Board.rowOf(from))) {
+                int to = Board.square(pos.getX(), pos.getY());
+                moves[count++] = Move.encode(from, to, (opp & (1L << to)) != 0);
+            }
+        }
+
+        return count;
+    }
+
+    private PieceType winner(Board board) {
+        return generator == Generator.FAST ? board.getWinner() : ReferenceRules.getWinner(board);
+    }
+
+    /**
+     * Returns the moves of the side to move, as counted by this generator.
+     */
+    private int[] rootMoves(Board board) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = winner(board) != null ? 0 : generate(board, moves);
+        int[] result = new int[count];
+        System.arraycopy(moves, 0, result, 0, count);
+
+        return result;
+    }
+
+    /**
+     * Counts the leaves of the move tree under every root move.
+     *
+     * @param board the game position, left as it was on return
+     * @param depth the number of moves to look ahead, at least 1
+     * @param generator the move generator to count with
+     * @param threads the number of threads to share the root moves between
+     * @return the root moves and the count under each, in generation order
+     */
+    public static Divide divide(Board board, int depth, Generator generator, int threads) {
+        int[] moves = new Perft(generator).rootMoves(board);
+        long[] counts = new long[moves.length];
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int move : moves) {
+                Board copy = new Board(board);
+                futures.add(pool.submit(() -> {
+                    copy.makeMove(Move.from(move), Move.to(move));
+                    return new Perft(generator).perft(copy, depth - 1);
+                }));
+            }
+            for (int k = 0; k < moves.length; k++) {
+                counts[k] = futures.get(k).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Perft interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Perft failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return new Divide(moves, counts);
+    }
+
+    /**
+     * The leaf counts under every root move.
+     */
+    public static class Divide {
+        private final int[] moves;
+        private final long[] counts;
+
+        public Divide(int[] moves, long[] counts) {
+            this.moves = moves;
+            this.counts = counts;
+        }
+
+        public int[] getMoves() {
+            return moves;
+        }
+
+        public long[] getCounts() {
+            return counts;
+        }
+
+        public long getTotal() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+
+            return total;
+        }
+    }
+
+    public static void main(String[] args) {
+        Board board = Board.initial();
+        Generator generator = Generator.FAST;
+        boolean divide = false;
+        boolean check = false;
+        int threads = 1;
+        int depth = -1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--position":
+                        board = Board.parse(args[++i]);
+                        break;
+                    case "--size":
+                        board = Board.initial(Geometry.of(Integer.parseInt(args[++i])));
+                        break;
+                    case "--generator":
+                        generator = Generator.valueOf(args[++i].toUpperCase());
+                        break;
+                    case "--divide":
+                        divide = true;
+                        break;
+                    case "--check":
+                        check = true;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        depth = Integer.parseInt(args[i]);
+                }
+            }
+            if (depth < 1 || depth > Search.MAX_PLY) {
+                throw new IllegalArgumentException("The depth must be from 1 to " + Search.MAX_PLY);
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java loa.Perft [--position \"<position>\" | --size n]"
+                    + " [--generator fast|reference] [--divide] [--threads n] [--check] depth");
+            System.exit(2);
+        }
+
+        System.out.println("Position: " + board);
+
+        if (check) {
+            Divide fast = run(board, depth, Generator.FAST, threads, divide);
+            Divide reference = run(board, depth, Generator.REFERENCE, threads, divide);
+            if (!Arrays.equals(fast.getMoves(), reference.getMoves())
+                    || !Arrays.equals(fast.getCounts(), reference.getCounts())) {
+                System.out.println("MISMATCH between the fast and the reference generator");
+                System.exit(1);
+            }
+            System.out.println("The generators agree");
+        }
+        else {
+            run(board, depth, generator, threads, divide);
+        }
+    }
+
+    private static Divide run(Board board, int depth, Generator generator, int threads,
+                              boolean print) {
+        long start = System.nanoTime();
+        Divide result = divide(board, depth, generator, threads);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+
+        if (print) {
+            for (int k = 0; k < result.getMoves().length; k++) {
+                System.out.println(Move.toString(result.getMoves()[k]) + ": " + result.getCounts()[k]);
+            }
+        }
+        long total = result.getTotal();
+        System.out.printf("%s: depth %d, %d nodes, %d ms, %d nodes/s%n",
+                generator.name().toLowerCase(), depth, total, elapsed / 1_000_000,
+                (long) (total * 1e9 / elapsed));
+
+        return result;
+    }
+}
@@ -0,0 +1,300 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * The rules of the game as first written for the board on screen, walking
+ * the lines and the groups of pieces square by square.
+ * <p>
+ * They are kept apart from the GUI, so tools can run them without JavaFX,
+ * as the reference the engine is checked against; the search uses
+ * {@link MoveGenerator} and {@link Board#getWinner()} instead.
+ */
+public final class ReferenceRules {
+    private ReferenceRules() {
+    }
+
+    /**
+     * Returns a set of tiles available for making the next move.
+     * <p>
+     * This walks the lines tile by tile and is kept as the reference
+     * implementation of the rules; the search uses {@link MoveGenerator}.
+     *
+     * @param board the game position
+     * @param x col number of the tile
+     * @param y row number of the tile
+     * @return an arraylist of the tiles available for next move
+     */
+    public static ArrayList<TilePosition> availableMoves(Board board, int x, int y) {
+        ArrayList<TilePosition> availableTiles = new ArrayList<>();
+        PieceType ownType = board.getPiece(x, y);
+        PieceType oppType = ownType == PieceType.RED ? PieceType.WHITE : PieceType.RED;
+        int size = board.getGeometry().getSize();
+
+        /*
+         * Check the availability of horizontal tiles
+         */
+        int totalPiece = 0;
+        boolean oppFound, occupied;
+        for (int i = 0; i < size; i++) {
+            if (board.hasPiece(i, y)) totalPiece++;
+        }
+        if (board.isWithinBoard(x + totalPiece, y)) {
+            oppFound = false;
+            occupied = false;
+            for (int i = x + 1; i < x + totalPiece; i++) {
+                if (board.hasPieceOnXY(i, y, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x + totalPiece, y, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x + totalPiece, y));
+        }
+        if (board.isWithinBoard(x - totalPiece, y)) {
+            oppFound = false;
+            occupied = false;
+            for (int i = x - totalPiece + 1; i < x; i++) {
+                if (board.hasPieceOnXY(i, y, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x - totalPiece, y, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x - totalPiece, y));
+        }
+
+        /*
+         * Check the availability of vertical tiles
+         */
+        totalPiece = 0;
+        for (int i = 0; i < size; i++) {
+            if (board.hasPiece(x, i)) totalPiece++;
+        }
+        if (board.isWithinBoard(x, y + totalPiece)) {
+            oppFound = false;
+            occupied = false;
+            for (int j = y + 1; j < y + totalPiece; j++) {
+                if (board.hasPieceOnXY(x, j, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x, y + totalPiece, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x, y + totalPiece));
+        }
+        if (board.isWithinBoard(x, y - totalPiece)) {
+            oppFound = false;
+            occupied = false;
+            for (int j = y - totalPiece + 1; j < y; j++) {
+                if (board.hasPieceOnXY(x, j, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x, y - totalPiece, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x, y - totalPiece));
+        }
+
+        /*
+         * Check the availability of diagonal tiles going from top-left to bottom-right
+         */
+        totalPiece = 0;
+        for (int i = x, j = y; board.isWithinBoard(i, j); i--, j--) {
+            if (board.hasPiece(i, j)) totalPiece++;
+        }
+        for (int i = x, j = y; board.isWithinBoard(i, j); i++, j++) {
+            if (board.hasPiece(i, j)) totalPiece++;
+        }
+        totalPiece--; // counted the piece in board[x][y] twice
+        if (board.isWithinBoard(x - totalPiece, y - totalPiece)) {
+            oppFound = false;
+            occupied = false;
+            for (int i = x - totalPiece + 1, j = y - totalPiece + 1; i < x && j < y; i++, j++) {
+                if (board.hasPieceOnXY(i, j, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x - totalPiece, y - totalPiece, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x - totalPiece, y - totalPiece));
+        }
+        if (board.isWithinBoard(x + totalPiece, y + totalPiece)) {
+            oppFound = false;
+            occupied = false;
+            for (int i = x + 1, j = y + 1; i < x + totalPiece && j < y + totalPiece; i++, j++) {
+                if (board.hasPieceOnXY(i, j, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x + totalPiece, y + totalPiece, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x + totalPiece, y + totalPiece));
+        }
+
+        /*
+         * Check the availability of diagonal tiles going from bottom-left to top-right
+         */
+        totalPiece = 0;
+        for (int i = x, j = y; board.isWithinBoard(i, j); i--, j++) {
+            if (board.hasPiece(i, j)) totalPiece++;
+        }
+        for (int i = x, j = y; board.isWithinBoard(i, j); i++, j--) {
+            if (board.hasPiece(i, j)) totalPiece++;
+        }
+        totalPiece--; // counted the piece in board[x][y] twice
+        if (board.isWithinBoard(x - totalPiece, y + totalPiece)) {
+            oppFound = false;
+            occupied = false;
+            for (int i = x - totalPiece + 1, j = y + totalPiece - 1; i < x && j > y; i++, j--) {
+                if (board.hasPieceOnXY(i, j, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x - totalPiece, y + totalPiece, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x - totalPiece, y + totalPiece));
+        }
+        if (board.isWithinBoard(x + totalPiece, y - totalPiece)) {
+            oppFound = false;
+            occupied = false;
+            for (int i = x + 1, j = y - 1; i < x + totalPiece && j > y - totalPiece; i++, j--) {
+                if (board.hasPieceOnXY(i, j, oppType)) {
+                    oppFound = true;
+                    break;
+                }
+            }
+            if (board.hasPieceOnXY(x + totalPiece, y - totalPiece, ownType))
+                occupied = true;
+            if (!oppFound && !occupied)
+                availableTiles.add(new TilePosition(x + totalPiece, y - totalPiece));
+        }
+
+        return availableTiles;
+    }
+
+    /**
+     * Checks if the specified side has won.
+     * <p>
+     * A side wins if all the pieces of the side are contiguous.
+     *
+     * @param board the game position
+     * @param side the side
+     * @return true if side param has won
+     */
+    public static boolean hasWon(Board board, PieceType side) {
+        int nrPcs = board.count(side);
+        int ctPcs = contPcs(board, side);
+
+        if (ctPcs == -1) {
+            return false;
+        }
+
+        return nrPcs == ctPcs;
+    }
+
+    /**
+     * Returns a PieceType object of the winning side.
+     * <p>
+     * The search uses {@link Board#getWinner()} instead, which gives the
+     * same answer without a flood fill in most positions.
+     *
+     * @param board the game position
+     * @return piece type of the winner if the game is over, otherwise null
+     */
+    public static PieceType getWinner(Board board) {
+        if (hasWon(board, PieceType.RED) && hasWon(board, PieceType.WHITE))
+            return PieceType.NONE;
+        if (hasWon(board, PieceType.RED))
+            return PieceType.RED;
+        if (hasWon(board, PieceType.WHITE))
+            return PieceType.WHITE;
+
+        return null;
+    }
+
+    /**
+     * Returns the number of contiguous pieces of a side in a random cluster.
+     *
+     * @param board the game position
+     * @param side the side to count the pieces of
+     * @return the number of contiguous pieces of side param
+     */
+    private static int contPcs(Board board, PieceType side) {
+        TilePosition firstSpot = null;
+        int size = board.getGeometry().getSize();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (board.hasPieceOnXY(i, j, side)) {
+                    if (firstSpot == null)
+                        firstSpot = new TilePosition(i, j);
+                }
+            }
+        }
+
+        if (firstSpot == null) {
+            System.out.println("ERROR: No piece of " + side + " is on the board.");
+            return -1;
+        }
+
+        return ctgPcsAt(board, side, firstSpot);
+    }
+
+    /**
+     * Returns the number of contiguous pieces of a side at a given cluster.
+     *
+     * @param board the game position
+     * @param side the side to count the pieces of
+     * @param firstSpot the tile around where to count the cluster
+     * @return the number of contiguous pieces of side param
+     */
+    static int ctgPcsAt(Board board, PieceType side, TilePosition firstSpot) {
+        int count = 0;
+        int size = board.getGeometry().getSize();
+        boolean[][] visited = new boolean[size][size];
+
+        LinkedList<TilePosition> queue = new LinkedList<>();
+        queue.add(firstSpot);
+        visited[firstSpot.getX()][firstSpot.getY()] = true;
+        count++;
+
+        while (!queue.isEmpty()) {
+            TilePosition pos = queue.remove();
+            int i = pos.getX();
+            int j = pos.getY();
+
+            int[] intI = {i - 1, i , i + 1};
+            int[] intJ = {j - 1, j, j + 1};
+
+            for (int m = 0; m < 3; m++) {
+                for (int n = 0; n < 3; n++) {
+                    if (m == 1 && n == 1) continue;
+                    if (board.isWithinBoard(intI[m], intJ[n]) && !visited[intI[m]][intJ[n]]) {
+                        if (board.hasPieceOnXY(intI[m], intJ[n], side)) {
+                            queue.add(new TilePosition(intI[m], intJ[n]));
+                            visited[intI[m]][intJ[n]] = true;
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+}
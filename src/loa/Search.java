@@ -0,0 +1,559 @@
+package loa;
+
+import java.util.Arrays;
+
+/**
+ * Alpha-beta search over a {@link Board}, deepened one ply at a time.
+ * <p>
+ * The search runs depth 1, 2, 3, ... until the maximum depth, the time
+ * budget or the node budget is reached, or {@link #stop()} is called from
+ * another thread. An iteration that is cut short is thrown away, so the
+ * move returned is always the best move of the last completed iteration.
+ * The principal variation of each iteration is searched first in the next.
+ * <p>
+ * With principal variation search switched on, only the first move of a
+ * node is searched with the full window; the others are searched with a
+ * null window to prove they are no better, and searched again only if
+ * they are. Each iteration after the first starts with an aspiration
+ * window around the score of the previous one, widened on failure.
+ * <p>
+ * At the horizon the search goes on over captures only, so a position is
+ * not scored in the middle of an exchange. The side to move may always
+ * stand pat on the static score instead of capturing.
+ * <p>
+ * Scores are from the point of view of the side to move.
+ */
+public class Search {
+    /**
+     * Score of a won position, far enough inside the int range to be negated.
+     * A win a number of plies away scores that much less, so the search goes
+     * for the quickest win and puts off a loss the longest.
+     */
+    public static final int WIN = 1_000_000;
+
+    /** Bound above any score. */
+    public static final int INFINITY = WIN + 1;
+
+    /** Deepest ply the search can reach. */
+    public static final int MAX_PLY = 64;
+
+    /** Scores at least this far from 0 are a won or a lost game. */
+    public static final int MIN_WIN = WIN - MAX_PLY;
+
+    /** Number of nodes searched between checks of the budgets. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** Number of evaluations between those timed term by term, when they are timed. */
+    private static final int PROFILE_INTERVAL = 64;
+
+    private final Evaluator evaluator;
+    private final TranspositionTable table;
+    private final EngineConfig config;
+    private final MoveOrdering ordering = new MoveOrdering();
+
+    /** Moves of the node being searched at every ply, so no node allocates its own. */
+    private final int[][] moveStack = new int[MAX_PLY + 1][MoveGenerator.MAX_MOVES];
+
+    /** The limits of the running search, or of the last one. */
+    private volatile SearchBudget budget = new SearchBudget(0, 0);
+    private boolean aborted;
+    private long nodes;
+    private long qnodes;
+
+    /** Nodes of every completed iteration, capture nodes included. */
+    private final long[] iterationNodes = new long[MAX_PLY + 1];
+
+    /*
+     * Static evaluations, and the time spent in each term of those timed.
+     * Terms are only timed while profileTerms is set, one evaluation in
+     * PROFILE_INTERVAL.
+     */
+    private long evaluations;
+    private long profiledEvaluations;
+    private final long[] termNanos = new long[Evaluator.TERMS.length];
+    private boolean profileTerms;
+
+    /** Principal variation found below every ply in the current iteration. */
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+
+    /** Principal variation of the last completed iteration. */
+    private final int[] prevPv = new int[MAX_PLY + 1];
+    private int prevPvLength;
+
+    /** Whether the node being searched lies on the previous principal variation. */
+    private boolean followPv;
+
+    private int bestMove;
+    private int bestScore;
+    private int completedDepth;
+
+    /** Called after every completed iteration, or null. */
+    private Runnable iterationListener;
+
+    /** Plies every iteration goes deeper than the usual schedule. */
+    private int depthOffset;
+
+    public Search(Evaluator evaluator, TranspositionTable table, EngineConfig config) {
+        this.evaluator = evaluator;
+        this.table = table;
+        this.config = config;
+    }
+
+    /**
+     * Searches a position for the best move of the side to move.
+     *
+     * @param board the game position, left as it was on return
+     * @param maxDepth the deepest iteration to run
+     * @param timeMs the time budget in milliseconds, or 0 for none
+     * @param nodeLimit the node budget, or 0 for none
+     * @return the best move found, or Move.NONE if there is no legal move
+     */
+    public int run(Board board, int maxDepth, long timeMs, long nodeLimit) {
+        return run(board, maxDepth, new SearchBudget(timeMs, nodeLimit));
+    }
+
+    /**
+     * Searches a position for the best move of the side to move, under a
+     * budget made by the caller, so it can be stopped or limited before
+     * the search starts.
+     *
+     * @param board the game position, left as it was on return
+     * @param maxDepth the deepest iteration to run
+     * @param budget the limits of the search, its nodes counted by this thread
+     * @return the best move found, or Move.NONE if there is no legal move
+     */
+    public int run(Board board, int maxDepth, SearchBudget budget) {
+        this.budget = budget;
+        this.aborted = false;
+        resetCounters();
+        this.prevPvLength = 0;
+        this.completedDepth = 0;
+        this.bestScore = 0;
+        ordering.newSearch();
+
+        int[] rootMoves = moveStack[0];
+        int count = MoveGenerator.generateMoves(board, rootMoves, 0);
+        bestMove = count > 0 ? rootMoves[0] : Move.NONE;
+        if (count == 0) {
+            return bestMove;
+        }
+
+        int window = config.getAspirationWindow();
+        for (int depth = 1 + depthOffset; depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+            int score = searchRoot(board, depth, window);
+
+            if (aborted) {
+                // Better than nothing if not even the first iteration finished
+                if (completedDepth == 0 && pvLength[0] > 0) {
+                    bestMove = pv[0][0];
+                }
+                break;
+            }
+
+            bestMove = pv[0][0];
+            bestScore = score;
+            completedDepth = depth;
+            iterationNodes[depth] = nodes + qnodes;
+            prevPvLength = pvLength[0];
+            System.arraycopy(pv[0], 0, prevPv, 0, prevPvLength);
+            if (iterationListener != null) {
+                iterationListener.run();
+            }
+
+            // The game is decided, deeper iterations cannot change that
+            if (Math.abs(score) >= MIN_WIN) {
+                break;
+            }
+        }
+
+        return bestMove;
+    }
+
+    /**
+     * Searches the root to a depth, starting from a window around the score
+     * of the previous iteration and widening it each time the score falls
+     * outside.
+     */
+    private int searchRoot(Board board, int depth, int window) {
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        if (completedDepth > 0 && window > 0 && Math.abs(bestScore) < MIN_WIN) {
+            alpha = bestScore - window;
+            beta = bestScore + window;
+        }
+
+        while (true) {
+            followPv = true;
+            int score = negamax(board, depth, 0, alpha, beta);
+
+            if (aborted) {
+                return score;
+            }
+            if (score <= alpha && alpha > -INFINITY) {
+                window *= 2;
+                alpha = Math.max(score - window, -INFINITY);
+            }
+            else if (score >= beta && beta < INFINITY) {
+                window *= 2;
+                beta = Math.min(score + window, INFINITY);
+            }
+            else {
+                return score;
+            }
+        }
+    }
+
+    /**
+     * Clears the counters of nodes, cutoffs and evaluations, as a new
+     * search does. Only called while no search runs, so that they do not
+     * show the last search until the next one starts.
+     */
+    void resetCounters() {
+        this.nodes = 0;
+        this.qnodes = 0;
+        this.evaluations = 0;
+        this.profiledEvaluations = 0;
+        Arrays.fill(termNanos, 0);
+        ordering.resetCounters();
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible.
+     * <p>
+     * Safe to call from any thread; {@link #run} then returns the best
+     * move of the last completed iteration. A search that has not started
+     * yet is not affected; stop its budget instead.
+     */
+    public void stop() {
+        budget.stop();
+    }
+
+
+    private int negamax(Board board, int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        boolean onPv = followPv;
+        followPv = false;
+
+        if ((++nodes & (CHECK_INTERVAL - 1)) == 0) {
+            checkLimits();
+        }
+        if (aborted) {
+            return 0;
+        }
+
+        PieceType winner = board.getWinner();
+        if (winner != null) {
+            // If both sides got connected, the side that made the move wins
+            return winner == board.getSideToMove() ? WIN - ply : -(WIN - ply);
+        }
+
+        if (ply >= MAX_PLY) {
+            return evaluate(board);
+        }
+        if (depth == 0) {
+            return quiesce(board, ply, 0, alpha, beta);
+        }
+
+        /*
+         * Reuse the result of an earlier search of the same position
+         * if it went at least as deep and settles the score here.
+         * The root is always searched, so that it has a move to return,
+         * and so are the nodes of an open window, which would otherwise
+         * cut the principal variation short where the table answers.
+         */
+        long key = board.getHash();
+        long entry = table.probe(key);
+        int hashMove = Move.NONE;
+        if (entry != 0) {
+            int entryScore = fromTable(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if (ply > 0 && beta - alpha == 1 && TranspositionTable.depth(entry) >= depth) {
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER && entryScore >= beta)
+                        || (bound == TranspositionTable.UPPER && entryScore <= alpha)) {
+                    return entryScore;
+                }
+            }
+            hashMove = TranspositionTable.move(entry);
+        }
+
+        int alphaOrig = alpha;
+        int[] moves = moveStack[ply];
+        int count = MoveGenerator.generateMoves(board, moves, 0);
+
+        // Try the move of the previous principal variation first, else the hash move
+        boolean pvNode = onPv && ply < prevPvLength;
+        ordering.order(moves, count, ply, pvNode ? prevPv[ply] : hashMove);
+        boolean pvFirst = pvNode && count > 0 && moves[0] == prevPv[ply];
+
+        // A side that cannot move has lost
+        if (count == 0) {
+            return -(WIN - ply);
+        }
+
+        int bestScore = -INFINITY;
+        int bestMove = Move.NONE;
+
+        for (int k = 0; k < count; k++) {
+            int from = Move.from(moves[k]);
+            int to = Move.to(moves[k]);
+
+            followPv = pvFirst && k == 0;
+            boolean captured = board.makeMove(from, to);
+            int score;
+            if (k == 0 || !config.isPrincipalVariationSearch()) {
+                score = -negamax(board, depth - 1, ply + 1, -beta, -alpha);
+            }
+            else {
+                // Prove the move is no better than the best so far, else search it fully
+                score = -negamax(board, depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -negamax(board, depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            board.unmakeMove(from, to, captured);
+
+            if (aborted) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = moves[k];
+            }
+            if (score > alpha) {
+                alpha = score;
+
+                pv[ply][ply] = moves[k];
+                System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+                pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+            }
+            if (alpha >= beta) {
+                ordering.recordCutoff(moves[k], k, ply, depth);
+                break;
+            }
+        }
+
+        int bound = bestScore <= alphaOrig ? TranspositionTable.UPPER
+                : bestScore >= beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+        table.store(key, depth, bound, toTable(bestScore, ply), bestMove);
+
+        return bestScore;
+    }
+
+    /**
+     * Converts a score for storing in the table, where a won or lost game
+     * counts its plies from the node rather than from the root, as the same
+     * position may be reached at another ply.
+     */
+    private static int toTable(int score, int ply) {
+        if (score >= MIN_WIN) return score + ply;
+        if (score <= -MIN_WIN) return score - ply;
+        return score;
+    }
+
+    /**
+     * Converts a score from the table back to one counted from the root.
+     */
+    private static int fromTable(int score, int ply) {
+        if (score >= MIN_WIN) return score - ply;
+        if (score <= -MIN_WIN) return score + ply;
+        return score;
+    }
+
+    /**
+     * Searches the captures of a position at or past the horizon.
+     *
+     * @param board the game position
+     * @param ply the ply of the node
+     * @param qdepth the number of captures made since the horizon
+     * @param alpha the lower bound of the window
+     * @param beta the upper bound of the window
+     * @return the score of the position for the side to move
+     */
+    private int quiesce(Board board, int ply, int qdepth, int alpha, int beta) {
+        if (qdepth > 0) {
+            pvLength[ply] = ply;
+            if ((++qnodes & (CHECK_INTERVAL - 1)) == 0) {
+                checkLimits();
+            }
+            if (aborted) {
+                return 0;
+            }
+
+            PieceType winner = board.getWinner();
+            if (winner != null) {
+                return winner == board.getSideToMove() ? WIN - ply : -(WIN - ply);
+            }
+        }
+
+        // The side to move is not forced to capture, so the static score is a lower bound
+        int standPat = evaluate(board);
+        if (standPat >= beta || qdepth >= config.getQuiescenceDepth() || ply >= MAX_PLY) {
+            return standPat;
+        }
+        alpha = Math.max(alpha, standPat);
+
+        int[] moves = moveStack[ply];
+        int count = MoveGenerator.generateCaptures(board, moves, 0);
+        int bestScore = standPat;
+
+        for (int k = 0; k < count; k++) {
+            int from = Move.from(moves[k]);
+            int to = Move.to(moves[k]);
+
+            boolean captured = board.makeMove(from, to);
+            int score = -quiesce(board, ply + 1, qdepth + 1, -beta, -alpha);
+            board.unmakeMove(from, to, captured);
+
+            if (aborted) {
+                return 0;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Returns the heuristic score of a position for the side to move.
+     */
+    private int evaluate(Board board) {
+        int score;
+        if (profileTerms && (++evaluations & (PROFILE_INTERVAL - 1)) == 0) {
+            score = evaluator.getScore(board, PieceType.WHITE, termNanos);
+            profiledEvaluations++;
+        } else {
+            score = evaluator.getScore(board, PieceType.WHITE);
+        }
+        return board.getSideToMove() == PieceType.WHITE ? score : -score;
+    }
+
+    private void checkLimits() {
+        if (budget.isSpent(nodes + qnodes)) {
+            aborted = true;
+        }
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Returns the score of the best move in the last completed iteration.
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * Returns the depth of the last completed iteration.
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the number of nodes searched before the horizon.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of capture nodes searched past the horizon.
+     */
+    public long getQuiescenceNodes() {
+        return qnodes;
+    }
+
+
+    /**
+     * Returns the ratio of the nodes of the last completed iteration to
+     * those of the one before it, or 0 before two have completed.
+     */
+    public double getBranchingFactor() {
+        int depth = completedDepth;
+        if (depth < 2) return 0;
+
+        long last = iterationNodes[depth] - iterationNodes[depth - 1];
+        long before = iterationNodes[depth - 1] - iterationNodes[depth - 2];
+        return before > 0 ? (double) last / before : 0;
+    }
+
+    /**
+     * Sets whether the evaluation terms are timed in the next searches.
+     */
+    public void setProfileTerms(boolean profileTerms) {
+        this.profileTerms = profileTerms;
+    }
+
+    /**
+     * Returns the number of static evaluations, counted while the terms
+     * are timed.
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Returns the number of evaluations whose terms were timed.
+     */
+    public long getProfiledEvaluations() {
+        return profiledEvaluations;
+    }
+
+    /**
+     * Returns the nanoseconds spent in each term of the timed
+     * evaluations, in the order of {@link Evaluator#TERMS}.
+     */
+    public long[] getTermNanos() {
+        return termNanos.clone();
+    }
+
+    /**
+     * Sets a callback run on the searching thread after every completed
+     * iteration, when the depth, score and principal variation of the
+     * iteration can be read.
+     *
+     * @param iterationListener the callback, or null for none
+     */
+    public void setIterationListener(Runnable iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    /**
+     * Makes every iteration search deeper than the usual schedule of 1, 2,
+     * 3 and so on, so a helper of a parallel search does not run in step
+     * with the main thread.
+     *
+     * @param depthOffset the plies to add, 0 for the usual schedule
+     */
+    void setDepthOffset(int depthOffset) {
+        this.depthOffset = depthOffset;
+    }
+
+    public MoveOrdering getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * Returns the principal variation of the last completed iteration.
+     */
+    public int[] getPv() {
+        int[] line = new int[prevPvLength];
+        System.arraycopy(prevPv, 0, line, 0, prevPvLength);
+        return line;
+    }
+}
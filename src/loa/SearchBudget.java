@@ -0,0 +1,72 @@
+package loa;
+
+/**
+ * The limits of one search: a deadline, a number of nodes or playouts,
+ * and a request to stop.
+ * <p>
+ * A search runs under the budget it is given and never resets it. An
+ * owner that runs the search on another thread makes the budget before
+ * handing the search over, and stops or limits the budget: a request that
+ * comes before the search has started is then kept, not lost when it
+ * starts. A budget is safe to use from several threads at once.
+ */
+public final class SearchBudget {
+    private final long limit;
+    private volatile long deadline;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a budget.
+     *
+     * @param timeMs the time budget in milliseconds, counted from now, or 0
+     *               for none
+     * @param limit the budget of nodes or playouts, or 0 for none
+     */
+    public SearchBudget(long timeMs, long limit) {
+        this.limit = limit;
+        this.deadline = timeMs > 0 ? System.nanoTime() + timeMs * 1_000_000 : 0;
+    }
+
+    /**
+     * Asks the search to stop as soon as possible, or not to search at all
+     * if it has not started yet.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Sets the time budget, counted from now.
+     * <p>
+     * Used to turn a search started without a budget, such as a ponder
+     * search, into a timed one.
+     *
+     * @param timeMs the time budget in milliseconds, or 0 to leave it as it is
+     */
+    public void limitTime(long timeMs) {
+        if (timeMs > 0) {
+            deadline = System.nanoTime() + timeMs * 1_000_000;
+        }
+    }
+
+    /**
+     * Checks if a budget limits neither the time nor the count.
+     */
+    public boolean isUnlimited() {
+        return limit == 0 && deadline == 0;
+    }
+
+    /**
+     * Checks if the search must end: it was stopped, or the time or the
+     * count ran out.
+     *
+     * @param count the nodes or playouts searched so far
+     * @return true if the search must end
+     */
+    public boolean isSpent(long count) {
+        long deadline = this.deadline;
+        return stopped
+                || (deadline != 0 && System.nanoTime() - deadline >= 0)
+                || (limit != 0 && count >= limit);
+    }
+}
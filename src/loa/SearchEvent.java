@@ -0,0 +1,68 @@
+package loa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * A search of the engine for a move, recorded by JDK Flight Recorder.
+ * <p>
+ * Committed by {@link ParallelSearch} at the end of every search, with
+ * the counts of all its threads. Costs nothing but an allocation per
+ * move unless a recording is running.
+ */
+@Name("loa.Search")
+@Label("Search")
+@Category({ "Lines of Action", "Engine" })
+@Description("A search of the engine for a move")
+@StackTrace(false)
+final class SearchEvent extends Event {
+    @Label("Depth")
+    @Description("Depth of the last completed iteration")
+    int depth;
+
+    @Label("Nodes")
+    @Description("Nodes searched before the horizon, by all threads")
+    long nodes;
+
+    @Label("Capture Nodes")
+    @Description("Capture nodes searched past the horizon, by all threads")
+    long quiescenceNodes;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Nodes per Second")
+    long nodesPerSecond;
+
+    @Label("Branching Factor")
+    @Description("Nodes of the last completed iteration over those of the one before")
+    double branchingFactor;
+
+    @Label("Cutoff Rate")
+    @Description("Beta cutoffs per node before the horizon")
+    @Percentage
+    double cutoffRate;
+
+    @Label("First Move Cutoff Rate")
+    @Description("Beta cutoffs made by the first move searched, of all cutoffs")
+    @Percentage
+    double firstMoveCutoffRate;
+
+    @Label("Table Hits")
+    long tableHits;
+
+    @Label("Table Misses")
+    long tableMisses;
+
+    @Label("Move")
+    String move;
+
+    @Label("Score")
+    @Description("Score of the move for the side to move")
+    int score;
+}
@@ -0,0 +1,280 @@
+package loa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exact results of the positions with few pieces, read straight from a
+ * memory-mapped file written by {@link TablebaseGenerator}.
+ * <p>
+ * There is a table for every count of red and white pieces up to the
+ * largest one solved. A position is numbered by the colex rank of its red
+ * squares, then that of its white squares among the squares left, then
+ * the side to move; see {@link #index}.
+ * <p>
+ * Every entry is a code of a few bits: the low two bits tell a draw (0),
+ * a win (1) or a loss (2) for the side to move, and the bits above hold
+ * the number of moves until the game is won. Entries are packed
+ * back to back, with as many bits as the longest distance in the table
+ * needs.
+ * <p>
+ * The file starts with a header of four ints: the magic number, the
+ * version, the size of the board and the largest number of pieces per
+ * side. Then comes a directory of every table, ordered by red count then
+ * white count, each the offset of its data in bytes (long), its bits per
+ * entry (int) and its longest distance (int). The data follows, padded
+ * with eight bytes so an entry can always be read with one long.
+ * <p>
+ * A tablebase is safe to use from several threads at once.
+ */
+public final class Tablebase {
+    /** "LOAT" in ASCII. */
+    static final int MAGIC = 0x4C4F4154;
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 16;
+    static final int DIRECTORY_BYTES = 16;
+
+    /** Results of the codes, in the low two bits. */
+    public static final int DRAW = 0, WIN = 1, LOSS = 2;
+
+    /** The code of a position not in the tablebase. */
+    public static final int UNKNOWN = -1;
+
+    /** Binomial coefficients, {@code BINOMIAL[n][k]} for n up to 64. */
+    static final long[][] BINOMIAL = new long[Geometry.SQUARES + 1][Geometry.SQUARES + 1];
+
+    static {
+        for (int n = 0; n <= Geometry.SQUARES; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    private final ByteBuffer data;
+    private final Geometry geometry;
+    private final int maxPieces;
+
+    /** Offset in bytes and bits per entry of every table, by red and white count. */
+    private final long[] offsets;
+    private final int[] bits;
+
+    private Tablebase(ByteBuffer data, Geometry geometry, int maxPieces) {
+        this.data = data;
+        this.geometry = geometry;
+        this.maxPieces = maxPieces;
+
+        int tables = (maxPieces + 1) * (maxPieces + 1);
+        offsets = new long[tables];
+        bits = new int[tables];
+        int entry = HEADER_BYTES;
+        for (int r = 1; r <= maxPieces; r++) {
+            for (int w = 1; w <= maxPieces; w++) {
+                int t = r * (maxPieces + 1) + w;
+                offsets[t] = data.getLong(entry);
+                bits[t] = data.getInt(entry + 8);
+                entry += DIRECTORY_BYTES;
+            }
+        }
+    }
+
+    /**
+     * Maps a tablebase file into memory.
+     *
+     * @param path the tablebase file
+     * @return the tablebase
+     * @throws IOException if the file cannot be read, is not a tablebase or
+     *         is shorter than the tables its header describes
+     */
+    public static Tablebase open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a tablebase: " + path);
+            }
+
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int size = buffer.getInt(8);
+            int maxPieces = buffer.getInt(12);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || size < Geometry.MIN_SIZE || size > Geometry.MAX_SIZE
+                    || maxPieces < 1 || maxPieces > size * size / 2) {
+                throw new IOException("Not a tablebase: " + path);
+            }
+
+            // A file cut short would pass the header and fail on the first probe
+            long directoryEnd = HEADER_BYTES + (long) maxPieces * maxPieces * DIRECTORY_BYTES;
+            if (buffer.capacity() < directoryEnd) {
+                throw new IOException("Truncated tablebase: " + path);
+            }
+            Geometry geometry = Geometry.of(size);
+            int entry = HEADER_BYTES;
+            for (int r = 1; r <= maxPieces; r++) {
+                for (int w = 1; w <= maxPieces; w++) {
+                    long offset = buffer.getLong(entry);
+                    int bits = buffer.getInt(entry + 8);
+                    if (offset < directoryEnd || bits < 2 || bits > 31) {
+                        throw new IOException("Corrupt tablebase: " + path);
+                    }
+                    // The data of every table is followed by at least the eight bytes of padding
+                    if (offset + (entries(geometry, r, w) * bits + 7) / 8 + 8 > buffer.capacity()) {
+                        throw new IOException("Truncated tablebase: " + path);
+                    }
+                    entry += DIRECTORY_BYTES;
+                }
+            }
+
+            return new Tablebase(buffer, geometry, maxPieces);
+        }
+    }
+
+    public int getSize() {
+        return geometry.getSize();
+    }
+
+    /**
+     * Returns the largest number of pieces per side that was solved.
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Checks if a position is in the tablebase.
+     *
+     * @param board the game position
+     * @return true if the position is on a board of the right size and
+     *         neither side has more pieces than were solved
+     */
+    public boolean covers(Board board) {
+        int r = board.count(PieceType.RED);
+        int w = board.count(PieceType.WHITE);
+        return board.getGeometry() == geometry && r >= 1 && w >= 1 && r <= maxPieces && w <= maxPieces;
+    }
+
+    /**
+     * Looks up the result of a position.
+     *
+     * @param board the game position
+     * @return the code of the position for the side to move, or UNKNOWN
+     *         if it is not in the tablebase
+     */
+    public int probe(Board board) {
+        if (!covers(board)) {
+            return UNKNOWN;
+        }
+
+        long red = board.getPieces(PieceType.RED);
+        long white = board.getPieces(PieceType.WHITE);
+        int t = Long.bitCount(red) * (maxPieces + 1) + Long.bitCount(white);
+        long bit = index(geometry, red, white, board.getSideToMove()) * bits[t];
+        long word = data.getLong((int) (offsets[t] + (bit >>> 3)));
+
+        return (int) (word >>> (bit & 7)) & ((1 << bits[t]) - 1);
+    }
+
+    /**
+     * Returns the result in a code: DRAW, WIN or LOSS.
+     */
+    public static int result(int code) {
+        return code & 3;
+    }
+
+    /**
+     * Returns the number of moves until the game is won in a code.
+     */
+    public static int distance(int code) {
+        return code >>> 2;
+    }
+
+    /**
+     * Returns the best move of a position in the tablebase: the quickest
+     * win, the slowest loss, or a move that keeps the draw.
+     *
+     * @param board the game position, left as it was on return
+     * @return the move, or Move.NONE if the position is not in the
+     *         tablebase or has no moves
+     */
+    public int bestMove(Board board) {
+        int code = probe(board);
+        if (code == UNKNOWN) {
+            return Move.NONE;
+        }
+
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateMoves(board, moves, 0);
+        int best = count > 0 ? moves[0] : Move.NONE;
+        int bestRank = Integer.MIN_VALUE;
+
+        for (int k = 0; k < count; k++) {
+            int from = Move.from(moves[k]);
+            int to = Move.to(moves[k]);
+            boolean captured = board.makeMove(from, to);
+            int reply = probe(board);
+            board.unmakeMove(from, to, captured);
+            if (reply == UNKNOWN) continue;
+
+            // Ranked for the mover: wins soonest first, then draws, then losses latest first
+            int rank;
+            if (result(reply) == LOSS) rank = 1000 - distance(reply);
+            else if (result(reply) == DRAW) rank = 0;
+            else rank = -1000 + distance(reply);
+
+            if (rank > bestRank) {
+                bestRank = rank;
+                best = moves[k];
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns the number of the entry of a position in its table.
+     *
+     * @param geometry the size of the board
+     * @param red the occupancy mask of the red pieces
+     * @param white the occupancy mask of the white pieces
+     * @param sideToMove the side that makes the next move
+     * @return the entry number
+     */
+    static long index(Geometry geometry, long red, long white, PieceType sideToMove) {
+        int squares = geometry.getSize() * geometry.getSize();
+        long whites = BINOMIAL[squares - Long.bitCount(red)][Long.bitCount(white)];
+        long rank = rank(geometry, red, 0) * whites + rank(geometry, white, red);
+
+        return rank * 2 + (sideToMove == PieceType.WHITE ? 1 : 0);
+    }
+
+    /**
+     * Returns the colex rank of a set of squares, numbered col by col
+     * leaving out the squares in skip.
+     */
+    static long rank(Geometry geometry, long pieces, long skip) {
+        int size = geometry.getSize();
+        long rank = 0;
+        int i = 1;
+        for (long pcs = pieces; pcs != 0; pcs &= pcs - 1, i++) {
+            int sq = Long.numberOfTrailingZeros(pcs);
+            int n = Board.colOf(sq) * size + Board.rowOf(sq) - Long.bitCount(skip & ((1L << sq) - 1));
+            rank += BINOMIAL[n][i];
+        }
+
+        return rank;
+    }
+
+    /**
+     * Returns the number of entries of the table of a red and white count.
+     */
+    static long entries(Geometry geometry, int red, int white) {
+        int squares = geometry.getSize() * geometry.getSize();
+        return BINOMIAL[squares][red] * BINOMIAL[squares - red][white] * 2;
+    }
+}
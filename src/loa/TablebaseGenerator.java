@@ -0,0 +1,477 @@
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Solves every position with up to a given number of pieces per side by
+ * retrograde analysis and writes them as a {@link Tablebase}.
+ * <p>
+ * The tables are solved from the fewest pieces up, so the positions a
+ * capture leads to are always solved already. Within a table, the
+ * positions that are over and those whose captures decide them come
+ * first. Then, distance by distance, every loss makes its predecessors
+ * wins, or quicker wins, and every win takes one move off the count its
+ * predecessors have left; a predecessor with none left is a loss. The
+ * predecessors are found by unmaking moves, so no position is searched
+ * forward twice.
+ * Whatever is left at the end is a draw.
+ * <p>
+ * While a table is solved, a position takes a byte of result: 0 for not
+ * known yet, 1 + d for a win in d moves and 128 + d for a loss in d
+ * moves. Both passes are split over the cores, with the bytes changed by
+ * compare-and-set.
+ * <p>
+ * Usage: {@code java loa.TablebaseGenerator [options]}, where the options are
+ * <ul>
+ *     <li>{@code --pieces n}: the most pieces per side, 3 by default</li>
+ *     <li>{@code --threads n}: the number of threads, one per core by default</li>
+ *     <li>{@code --size n}: the size of the board, 6 by default</li>
+ *     <li>{@code --out path}: the file to write, tablebase.bin by default</li>
+ * </ul>
+ */
+public final class TablebaseGenerator {
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    /** Positions a task of a pass covers. */
+    private static final int CHUNK = 1 << 16;
+
+    private final Geometry geometry;
+    private final int maxPieces;
+    private final ExecutorService pool;
+
+    /** Board squares in the order positions are ranked in. */
+    private final int[] squares;
+
+    /** Results of the solved tables, by red and white count. */
+    private final byte[][][] solved;
+
+    private final ThreadLocal<Board> boards;
+    private final ThreadLocal<int[]> moves = ThreadLocal.withInitial(() -> new int[MoveGenerator.MAX_MOVES]);
+
+    /** Results, moves left and longest wins after a move of the positions of the table being solved. */
+    private byte[] value, count, aux;
+    private int red, white;
+    private long whites;
+
+    /** Longest distance any position of the table has been given so far. */
+    private final AtomicInteger highest = new AtomicInteger();
+
+    /**
+     * Creates a generator.
+     *
+     * @param geometry the size of the board
+     * @param maxPieces the most pieces per side
+     * @param threads the number of threads
+     * @throws IllegalArgumentException if a table would not fit in an array
+     */
+    public TablebaseGenerator(Geometry geometry, int maxPieces, int threads) {
+        if (maxPieces < 1 || Tablebase.entries(geometry, maxPieces, maxPieces) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Cannot solve " + maxPieces + " pieces per side on "
+                    + geometry.getSize() + "x" + geometry.getSize());
+        }
+
+        this.geometry = geometry;
+        this.maxPieces = maxPieces;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "loa-tablebase");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.boards = ThreadLocal.withInitial(() -> new Board(geometry));
+
+        int size = geometry.getSize();
+        squares = new int[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                squares[x * size + y] = Board.square(x, y);
+            }
+        }
+        solved = new byte[maxPieces + 1][maxPieces + 1][];
+    }
+
+    /**
+     * Solves every table, fewest pieces first.
+     */
+    public void generate() {
+        for (int total = 2; total <= 2 * maxPieces; total++) {
+            for (int r = Math.max(1, total - maxPieces); r <= Math.min(maxPieces, total - 1); r++) {
+                long start = System.nanoTime();
+                solve(r, total - r);
+                report(r, total - r, (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Solves the table of a red and white count.
+     */
+    private void solve(int r, int w) {
+        red = r;
+        white = w;
+        whites = Tablebase.BINOMIAL[squares.length - r][w];
+        int entries = (int) Tablebase.entries(geometry, r, w);
+        value = new byte[entries];
+        count = new byte[entries];
+        aux = new byte[entries];
+        highest.set(0);
+
+        parallel(entries, this::initialise);
+        for (int level = 0; level <= highest.get(); level++) {
+            int distance = level;
+            parallel(entries, index -> propagate(index, distance));
+        }
+
+        solved[r][w] = value;
+        value = count = aux = null;
+    }
+
+    /**
+     * Runs a task over every position of the table, split over the threads.
+     */
+    private void parallel(int entries, LongConsumer task) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int start = 0; start < entries; start += CHUNK) {
+            int from = start;
+            int to = Math.min(entries, start + CHUNK);
+            futures.add(pool.submit(() -> {
+                for (int index = from; index < to; index++) {
+                    task.accept(index);
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Sets up a board with the position of an entry of the table.
+     */
+    private Board position(long index) {
+        long rank = index >>> 1;
+        long redMask = unrank(rank / whites, red, squares);
+
+        int[] free = new int[squares.length - red];
+        int n = 0;
+        for (int sq : squares) {
+            if ((redMask & 1L << sq) == 0) free[n++] = sq;
+        }
+        long whiteMask = unrank(rank % whites, white, free);
+
+        Board board = boards.get();
+        board.setPosition(redMask, whiteMask, (index & 1) == 0 ? PieceType.RED : PieceType.WHITE);
+        return board;
+    }
+
+    /**
+     * Returns the squares of the set with a colex rank, picked from a list
+     * of squares.
+     */
+    private static long unrank(long rank, int k, int[] from) {
+        long mask = 0;
+        int c = from.length - 1;
+        for (int i = k; i >= 1; i--) {
+            while (Tablebase.BINOMIAL[c][i] > rank) c--;
+            rank -= Tablebase.BINOMIAL[c][i];
+            mask |= 1L << from[c];
+            c--;
+        }
+
+        return mask;
+    }
+
+    /**
+     * Scores a position that is over, counts the moves of the others and
+     * looks up the moves that capture in the smaller tables.
+     */
+    private void initialise(long index) {
+        int i = (int) index;
+        Board board = position(index);
+        PieceType side = board.getSideToMove();
+
+        // Both sides connected counts as a win for the side that just moved
+        PieceType winner = board.getWinner();
+        if (winner != null) {
+            value[i] = winner == side ? win(0) : loss(0);
+            return;
+        }
+
+        int[] list = moves.get();
+        int n = MoveGenerator.generateMoves(board, list, 0);
+        if (n == 0) {
+            value[i] = loss(0);
+            return;
+        }
+
+        int unknown = 0, winsAfter = Integer.MAX_VALUE, longestLoss = 0;
+        for (int k = 0; k < n; k++) {
+            if (!Move.isCapture(list[k])) {
+                unknown++;
+                continue;
+            }
+
+            int from = Move.from(list[k]);
+            int to = Move.to(list[k]);
+            board.makeMove(from, to);
+            byte reply = solved[board.count(PieceType.RED)][board.count(PieceType.WHITE)][
+                    (int) Tablebase.index(geometry, board.getPieces(PieceType.RED),
+                            board.getPieces(PieceType.WHITE), board.getSideToMove())];
+            board.unmakeMove(from, to, true);
+
+            if (isLoss(reply)) winsAfter = Math.min(winsAfter, distance(reply) + 1);
+            else if (isWin(reply)) longestLoss = Math.max(longestLoss, distance(reply));
+            else unknown++;
+        }
+
+        // A win by capture may still be beaten by a quicker one without
+        if (winsAfter != Integer.MAX_VALUE) {
+            value[i] = win(winsAfter);
+            raise(winsAfter);
+        } else if (unknown == 0) {
+            value[i] = loss(longestLoss + 1);
+            raise(longestLoss + 1);
+        } else {
+            count[i] = (byte) unknown;
+            aux[i] = (byte) longestLoss;
+        }
+    }
+
+    /**
+     * Passes the result of a position decided at a distance on to its
+     * predecessors.
+     */
+    private void propagate(long index, int distance) {
+        // Only quicker wins are set during the pass, at distance + 1 at most
+        byte v = value[(int) index];
+        boolean lost;
+        if (v == loss(distance)) lost = true;
+        else if (v == win(distance)) lost = false;
+        else return;
+
+        Board board = position(index);
+        PieceType mover = Board.opponent(board.getSideToMove());
+        long own = board.getPieces(mover);
+        long other = board.getPieces(board.getSideToMove());
+        long occupied = own | other;
+
+        // Unmakes every move of the side that just moved that captured nothing
+        for (long pcs = own; pcs != 0; pcs &= pcs - 1) {
+            int to = Long.numberOfTrailingZeros(pcs);
+            for (int dir = 0; dir < 8; dir++) {
+                int idx = (to * 8 + dir) * Geometry.STRIDE + board.lineCount(to, dir >>> 1);
+                int from = geometry.target[idx];
+                if (from == to || (occupied & 1L << from) != 0 || (geometry.between[idx] & other) != 0) {
+                    continue;
+                }
+
+                long before = own ^ (1L << to) ^ (1L << from);
+                int p = (int) (mover == PieceType.RED
+                        ? Tablebase.index(geometry, before, other, mover)
+                        : Tablebase.index(geometry, other, before, mover));
+                if (lost) {
+                    win(p, distance + 1);
+                } else {
+                    lose(p, distance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a position a win, unless it already wins as quickly.
+     */
+    private void win(int p, int distance) {
+        byte v;
+        do {
+            v = (byte) BYTES.getVolatile(value, p);
+            if (v != 0 && !(isWin(v) && distance(v) > distance)) return;
+        } while (!BYTES.compareAndSet(value, p, v, win(distance)));
+
+        raise(distance);
+    }
+
+    /**
+     * Counts off a move of a position that turned out to lose, and makes
+     * the position a loss when it has no move left.
+     */
+    private void lose(int p, int distance) {
+        if ((byte) BYTES.getVolatile(value, p) != 0) return;
+
+        // The longest win is in place before the count that reaches 0
+        int longest;
+        do {
+            longest = (byte) BYTES.getVolatile(aux, p);
+        } while (longest < distance && !BYTES.compareAndSet(aux, p, (byte) longest, (byte) distance));
+
+        int left;
+        do {
+            left = (byte) BYTES.getVolatile(count, p);
+            if (left == 0) return;
+        } while (!BYTES.compareAndSet(count, p, (byte) left, (byte) (left - 1)));
+
+        if (left == 1) {
+            int d = (byte) BYTES.getVolatile(aux, p) + 1;
+            if (BYTES.compareAndSet(value, p, (byte) 0, loss(d))) raise(d);
+        }
+    }
+
+    private void raise(int distance) {
+        if (distance > 126) {
+            throw new IllegalStateException("Distance " + distance + " does not fit in a byte");
+        }
+        highest.accumulateAndGet(distance, Math::max);
+    }
+
+    private static byte win(int distance) {
+        return (byte) (1 + distance);
+    }
+
+    private static byte loss(int distance) {
+        return (byte) (128 + distance);
+    }
+
+    private static boolean isWin(byte v) {
+        return v > 0;
+    }
+
+    private static boolean isLoss(byte v) {
+        return v < 0;
+    }
+
+    private static int distance(byte v) {
+        return v > 0 ? v - 1 : (v & 0xFF) - 128;
+    }
+
+    /**
+     * Returns the tablebase code of a result.
+     */
+    private static int code(byte v) {
+        if (isWin(v)) return distance(v) << 2 | Tablebase.WIN;
+        if (isLoss(v)) return distance(v) << 2 | Tablebase.LOSS;
+        return Tablebase.DRAW;
+    }
+
+    private void report(int r, int w, long millis) {
+        long wins = 0, losses = 0;
+        int longest = 0;
+        for (byte v : solved[r][w]) {
+            if (isWin(v)) wins++;
+            else if (isLoss(v)) losses++;
+            if (v != 0) longest = Math.max(longest, distance(v));
+        }
+
+        int entries = solved[r][w].length;
+        System.out.printf("%dv%d: %d positions, %d wins, %d losses, %d draws, longest %d, %d ms%n",
+                r, w, entries, wins, losses, entries - wins - losses, longest, millis);
+    }
+
+    /**
+     * Writes the solved tables in the format of {@link Tablebase}.
+     *
+     * @param path the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        int tables = maxPieces * maxPieces;
+        ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_BYTES + tables * Tablebase.DIRECTORY_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(Tablebase.MAGIC).putInt(Tablebase.VERSION).putInt(geometry.getSize()).putInt(maxPieces);
+
+        int[][] bits = new int[maxPieces + 1][maxPieces + 1];
+        long offset = header.capacity();
+        for (int r = 1; r <= maxPieces; r++) {
+            for (int w = 1; w <= maxPieces; w++) {
+                int longest = 0;
+                for (byte v : solved[r][w]) {
+                    if (v != 0) longest = Math.max(longest, distance(v));
+                }
+                bits[r][w] = 2 + 32 - Integer.numberOfLeadingZeros(longest);
+                header.putLong(offset).putInt(bits[r][w]).putInt(longest);
+                offset += ((long) solved[r][w].length * bits[r][w] + 7) / 8;
+            }
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            out.write(header.array());
+            for (int r = 1; r <= maxPieces; r++) {
+                for (int w = 1; w <= maxPieces; w++) {
+                    long pending = 0;
+                    int filled = 0;
+                    for (byte v : solved[r][w]) {
+                        pending |= (long) code(v) << filled;
+                        filled += bits[r][w];
+                        for (; filled >= 8; filled -= 8, pending >>>= 8) {
+                            out.write((int) pending);
+                        }
+                    }
+                    if (filled > 0) out.write((int) pending);
+                }
+            }
+
+            // Lets the last entry be read with a whole long
+            out.write(new byte[8]);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int pieces = 3;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int size = Geometry.DEFAULT_SIZE;
+        Path out = Path.of("tablebase.bin");
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--pieces":
+                        pieces = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--size":
+                        size = Integer.parseInt(args[++i]);
+                        break;
+                    case "--out":
+                        out = Path.of(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java loa.TablebaseGenerator [--pieces n] [--threads n] [--size n] [--out path]");
+            System.exit(2);
+        }
+
+        TablebaseGenerator generator = new TablebaseGenerator(Geometry.of(size), pieces, threads);
+        generator.generate();
+        generator.write(out);
+        System.out.println("Wrote " + out);
+    }
+}
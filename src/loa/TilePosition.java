@@ -1,7 +1,5 @@
 package loa;
 
-import java.util.Objects;
-
 public class TilePosition {
     private int x, y;
 
@@ -38,6 +36,6 @@ public class TilePosition {
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return 31 * x + y;
     }
 }
@@ -0,0 +1,786 @@
+package loa;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Plays the engine against itself without the GUI, to tell whether a
+ * change to it makes it stronger.
+ * <p>
+ * The games come in pairs that start from the same opening, a few random
+ * moves deep, with each engine playing red once. Every game runs on a
+ * thread of its own, and each side searches with the same
+ * {@link ParallelSearch} or {@link MctsSearch} the {@link MachinePlayer}
+ * uses, under its own {@link EngineConfig}, and plays from its opening
+ * book and tablebase
+ * while it can.
+ * A game is drawn when a position comes up for the third time or the
+ * move limit is reached.
+ * <p>
+ * The score is kept from the point of view of the first engine: wins,
+ * draws and losses, the Elo difference with its 95% error bars, and the
+ * log-likelihood ratio of a sequential probability ratio test (SPRT) of
+ * the hypothesis that the first engine is elo1 stronger against the one
+ * that it is elo0 stronger. The match stops as soon as the test accepts
+ * either hypothesis.
+ * <p>
+ * Usage: {@code java loa.Tournament [options]}, where the options are
+ * <ul>
+ *     <li>{@code --first name=value,...}: settings of the first engine, by
+ *     the names of {@link EngineConfig#set}; both engines start from the
+ *     system properties</li>
+ *     <li>{@code --second name=value,...}: settings of the second engine</li>
+ *     <li>{@code --games n}: the most games to play, 1000 by default</li>
+ *     <li>{@code --concurrency n}: the number of games played at once, one
+ *     per core by default</li>
+ *     <li>{@code --tc base+inc}: a clock per side of base seconds, plus inc
+ *     seconds per move; without it every move gets the movetime of its
+ *     engine</li>
+ *     <li>{@code --openings n}: the number of random moves the games start
+ *     with, 4 by default</li>
+ *     <li>{@code --size n}: the size of the board, 6 by default</li>
+ *     <li>{@code --max-plies n}: the move limit of a game, 300 by default</li>
+ *     <li>{@code --sprt elo0,elo1[,alpha,beta]}: the hypotheses and error
+ *     rates of the test, 0,5,0.05,0.05 by default</li>
+ *     <li>{@code --seed n}: the seed of the random openings</li>
+ *     <li>{@code --verbose}: print the result of every game</li>
+ *     <li>{@code --record path}: append every game to a binary record
+ *     file, see {@link GameRecords}</li>
+ * </ul>
+ */
+public final class Tournament {
+    /** The result of a game for the first engine. */
+    public enum Outcome { WIN, DRAW, LOSS }
+
+    private final EngineConfig first;
+    private final EngineConfig second;
+    private final Geometry geometry;
+
+    /** The opening books of the first and the second engine, null for none. */
+    private final OpeningBook[] books = new OpeningBook[2];
+
+    /** The tablebases of the first and the second engine, null for none. */
+    private final Tablebase[] tablebases = new Tablebase[2];
+
+    /** The evaluation weights of the first and the second engine. */
+    private final int[][] weights = new int[2][];
+
+    /** Clock of each side at the start and the time added per move, or 0 for no clock. */
+    private long baseMs = 0;
+    private long incrementMs = 0;
+
+    private int openingMoves = 4;
+    private int maxPlies = 300;
+    private long seed = 1;
+    private boolean verbose = false;
+    private Consumer<Result> listener;
+
+    /** The engines of all worker threads, so their threads can be let go after a match. */
+    private final Queue<Engine> created = new ConcurrentLinkedQueue<>();
+
+    /** Set once the match is decided, to end the games still running. */
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    /**
+     * The engines of each worker thread, kept from one game to the next so
+     * the transposition tables are only allocated once.
+     */
+    private final ThreadLocal<Engine[]> engines = new ThreadLocal<>() {
+        @Override
+        protected Engine[] initialValue() {
+            Engine[] pair = { new Engine(first, books[0], tablebases[0], weights[0]),
+                    new Engine(second, books[1], tablebases[1], weights[1]) };
+            created.add(pair[0]);
+            created.add(pair[1]);
+            return pair;
+        }
+    };
+
+    /**
+     * Creates a match.
+     *
+     * @param first the settings of the first engine, the one scored
+     * @param second the settings of the second engine
+     * @param geometry the size of the board
+     * @throws UncheckedIOException if an opening book, a tablebase or a
+     *         weights file cannot be read
+     */
+    public Tournament(EngineConfig first, EngineConfig second, Geometry geometry) {
+        this.first = first;
+        this.second = second;
+        this.geometry = geometry;
+
+        EngineConfig[] configs = { first, second };
+        for (int i = 0; i < 2; i++) {
+            String path = configs[i].getBook();
+            if (path.isEmpty()) continue;
+            try {
+                books[i] = OpeningBook.open(Path.of(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open the opening book " + path, e);
+            }
+        }
+        for (int i = 0; i < 2; i++) {
+            String path = configs[i].getTablebase();
+            if (path.isEmpty()) continue;
+            try {
+                tablebases[i] = Tablebase.open(Path.of(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open the tablebase " + path, e);
+            }
+        }
+        for (int i = 0; i < 2; i++) {
+            String path = configs[i].getWeights();
+            try {
+                weights[i] = path.isEmpty() ? Evaluator.defaultWeights() : Evaluator.readWeights(Path.of(path));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read the evaluation weights " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Sets a clock for each side.
+     *
+     * @param baseMs the time of each side at the start of a game, or 0 for
+     *               no clock
+     * @param incrementMs the time added to the clock after every move
+     */
+    public void setTimeControl(long baseMs, long incrementMs) {
+        this.baseMs = baseMs;
+        this.incrementMs = incrementMs;
+    }
+
+    public void setOpeningMoves(int openingMoves) {
+        this.openingMoves = openingMoves;
+    }
+
+    public void setMaxPlies(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets a callback that receives every finished game, on the thread
+     * that called {@link #run}.
+     *
+     * @param listener the callback, or null for none
+     */
+    public void setListener(Consumer<Result> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Plays a number of games, with no test to stop them early.
+     *
+     * @param games the number of games to play
+     * @param concurrency the number of games played at once
+     * @return the score of the first engine
+     */
+    public Score run(int games, int concurrency) {
+        return run(games, concurrency, null);
+    }
+
+    /**
+     * Plays games until the test accepts a hypothesis or the games run out.
+     *
+     * @param games the most games to play
+     * @param concurrency the number of games played at once
+     * @param sprt the test to stop on, or null to play every game
+     * @return the score of the first engine
+     */
+    public Score run(int games, int concurrency, Sprt sprt) {
+        stopped.set(false);
+        Score score = new Score();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread thread = new Thread(r, "loa-tournament");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            CompletionService<Result> done = new ExecutorCompletionService<>(pool);
+            for (int game = 0; game < games; game++) {
+                int number = game;
+                done.submit(() -> play(number));
+            }
+
+            for (int k = 0; k < games; k++) {
+                Result result = done.take().get();
+                if (result == null) continue;
+
+                score.add(result);
+                if (listener != null) {
+                    listener.accept(result);
+                }
+                if (verbose) {
+                    System.out.println("Game " + (result.getGame() + 1) + ": " + result);
+                }
+                if (score.getGames() % 10 == 0) {
+                    System.out.println(sprt != null ? score.summary(sprt) : score.summary());
+                }
+                if (sprt != null && sprt.decision(score) != 0) {
+                    stopped.set(true);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tournament interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Game failed", e.getCause());
+        } finally {
+            stopped.set(true);
+            pool.shutdownNow();
+
+            // The worker threads end with the match, and their engines with them
+            for (Engine engine; (engine = created.poll()) != null; ) {
+                engine.shutdown();
+            }
+        }
+
+        return score;
+    }
+
+    /**
+     * Plays one game. Games 2k and 2k + 1 start from the same opening,
+     * with the first engine red in the even one.
+     *
+     * @param game the number of the game
+     * @return the result, or null if the match was stopped meanwhile
+     */
+    public Result play(int game) {
+        if (stopped.get()) return null;
+
+        Engine[] pair = engines.get();
+        Engine[] bySide = game % 2 == 0 ? pair : new Engine[] { pair[1], pair[0] };
+        for (Engine engine : pair) {
+            if (engine.table != null) engine.table.clear();
+        }
+
+        int[] moves = new int[openingMoves + maxPlies];
+        Board board = opening(seed * 1_000_003 + game / 2, moves);
+        long[] clock = { baseMs, baseMs };
+        Map<Long, Integer> seen = new HashMap<>();
+        seen.put(board.getHash(), 1);
+
+        int plies = 0;
+        int length = openingMoves;
+        String reason;
+        PieceType winner;
+        while (true) {
+            if (stopped.get()) return null;
+
+            PieceType side = board.getSideToMove();
+            int s = side == PieceType.RED ? 0 : 1;
+            Engine engine = bySide[s];
+
+            long budget = engine.config.getMoveTimeMs();
+            if (baseMs > 0) {
+                // An even share of the time left, keeping half of it back
+                budget = Math.max(1, Math.min(clock[s] / 20 + incrementMs, clock[s] / 2));
+            }
+            long start = System.nanoTime();
+            int move = engine.book != null ? engine.book.probe(board) : Move.NONE;
+            if (move == Move.NONE && engine.tablebase != null) {
+                move = engine.tablebase.bestMove(board);
+            }
+            if (move == Move.NONE && engine.mcts != null) {
+                move = engine.mcts.run(board, budget, engine.config.getNodeLimit());
+            } else if (move == Move.NONE) {
+                engine.table.newSearch();
+                move = engine.search.run(board, engine.config.getMaxDepth(), budget,
+                        engine.config.getNodeLimit());
+            }
+            long spentMs = (System.nanoTime() - start) / 1_000_000;
+
+            if (move == Move.NONE) {
+                winner = Board.opponent(side);
+                reason = "no moves";
+                break;
+            }
+            if (baseMs > 0) {
+                clock[s] -= spentMs;
+                if (clock[s] < 0) {
+                    winner = Board.opponent(side);
+                    reason = "time";
+                    break;
+                }
+                clock[s] += incrementMs;
+            }
+
+            board.makeMove(Move.from(move), Move.to(move));
+            moves[length++] = move;
+            plies++;
+
+            PieceType connected = board.getWinner();
+            if (connected != null) {
+                // If both sides got connected, the side that made the move wins
+                winner = connected == PieceType.NONE ? side : connected;
+                reason = "connected";
+                break;
+            }
+            if (seen.merge(board.getHash(), 1, Integer::sum) >= 3) {
+                winner = PieceType.NONE;
+                reason = "repetition";
+                break;
+            }
+            if (plies >= maxPlies) {
+                winner = PieceType.NONE;
+                reason = "move limit";
+                break;
+            }
+        }
+
+        PieceType firstSide = game % 2 == 0 ? PieceType.RED : PieceType.WHITE;
+        Outcome outcome = winner == PieceType.NONE ? Outcome.DRAW
+                : winner == firstSide ? Outcome.WIN : Outcome.LOSS;
+
+        return new Result(game, outcome, reason, plies, winner, Arrays.copyOf(moves, length));
+    }
+
+    /**
+     * Returns the starting position after random moves, none of which
+     * ends the game.
+     *
+     * @param openingSeed the seed the moves are drawn with
+     * @param played the buffer to write the moves into
+     */
+    private Board opening(long openingSeed, int[] played) {
+        Random random = new Random(openingSeed);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        while (true) {
+            Board board = Board.initial(geometry);
+            int ply = 0;
+            for (; ply < openingMoves; ply++) {
+                int count = MoveGenerator.generateMoves(board, moves, 0);
+                if (count == 0) break;
+                int move = moves[random.nextInt(count)];
+                board.makeMove(Move.from(move), Move.to(move));
+                played[ply] = move;
+                if (board.getWinner() != null) break;
+            }
+            if (ply == openingMoves) {
+                return board;
+            }
+        }
+    }
+
+    /**
+     * One side of a game: its settings, and the search, book and tablebase
+     * that play by them. The table and the alpha-beta search are null when
+     * the Monte Carlo search plays.
+     */
+    private static class Engine {
+        private final EngineConfig config;
+        private final TranspositionTable table;
+        private final ParallelSearch search;
+        private final MctsSearch mcts;
+        private final OpeningBook book;
+        private final Tablebase tablebase;
+
+        Engine(EngineConfig config, OpeningBook book, Tablebase tablebase, int[] weights) {
+            this.config = config;
+            this.mcts = config.isMcts() ? new MctsSearch(config) : null;
+            this.table = mcts == null ? new TranspositionTable(config.getHashSizeMb()) : null;
+            this.search = mcts == null ? new ParallelSearch(table, config, weights) : null;
+            this.book = book;
+            this.tablebase = tablebase;
+        }
+
+        void shutdown() {
+            if (search != null) search.shutdown();
+            if (mcts != null) mcts.shutdown();
+        }
+    }
+
+    /**
+     * How a game ended.
+     */
+    public static class Result {
+        private final int game;
+        private final Outcome outcome;
+        private final String reason;
+        private final int plies;
+        private final PieceType winner;
+        private final int[] moves;
+
+        public Result(int game, Outcome outcome, String reason, int plies,
+                      PieceType winner, int[] moves) {
+            this.game = game;
+            this.outcome = outcome;
+            this.reason = reason;
+            this.plies = plies;
+            this.winner = winner;
+            this.moves = moves;
+        }
+
+        public int getGame() {
+            return game;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Returns the number of moves the engines played, after the opening.
+         */
+        public int getPlies() {
+            return plies;
+        }
+
+        /**
+         * Returns the side that won, or NONE for a draw.
+         */
+        public PieceType getWinner() {
+            return winner;
+        }
+
+        /**
+         * Returns the moves of the game from the starting position, the
+         * random opening moves included.
+         */
+        public int[] getMoves() {
+            return moves;
+        }
+
+        @Override
+        public String toString() {
+            return outcome.name().toLowerCase() + " by " + reason + " after " + plies + " moves";
+        }
+    }
+
+    /**
+     * The wins, draws and losses of the first engine.
+     */
+    public static class Score {
+        private int wins;
+        private int draws;
+        private int losses;
+        private int timeLosses;
+
+        public void add(Result result) {
+            switch (result.getOutcome()) {
+                case WIN:
+                    wins++;
+                    break;
+                case DRAW:
+                    draws++;
+                    break;
+                default:
+                    losses++;
+            }
+            if ("time".equals(result.getReason())) {
+                timeLosses++;
+            }
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getDraws() {
+            return draws;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        /**
+         * Returns the number of games lost on time, by either engine.
+         */
+        public int getTimeLosses() {
+            return timeLosses;
+        }
+
+        public int getGames() {
+            return wins + draws + losses;
+        }
+
+        /**
+         * Returns the mean score per game, a win counting 1 and a draw 1/2.
+         */
+        public double getMean() {
+            return (wins + draws / 2.0) / getGames();
+        }
+
+        /**
+         * Returns the variance of the score of a single game.
+         */
+        public double getVariance() {
+            double mean = getMean();
+            return (wins * (1 - mean) * (1 - mean) + draws * (0.5 - mean) * (0.5 - mean)
+                    + losses * mean * mean) / getGames();
+        }
+
+        /**
+         * Returns the Elo difference the mean score stands for.
+         */
+        public double getElo() {
+            return elo(getMean());
+        }
+
+        /**
+         * Returns the half-width of the 95% confidence interval of the Elo
+         * difference.
+         */
+        public double getEloError() {
+            if (getVariance() == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            double margin = 1.96 * Math.sqrt(getVariance() / getGames());
+            double mean = getMean();
+            return (elo(Math.min(mean + margin, 1)) - elo(Math.max(mean - margin, 0))) / 2;
+        }
+
+        /**
+         * Returns the expected score of the stronger side at an Elo
+         * difference.
+         */
+        static double expected(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+
+        static double elo(double score) {
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        /**
+         * Returns a line with the score and the Elo difference.
+         */
+        public String summary() {
+            return String.format("Games %d: +%d =%d -%d (%d on time), Elo %.1f +/- %.1f",
+                    getGames(), wins, draws, losses, timeLosses, getElo(), getEloError());
+        }
+
+        /**
+         * Returns a line with the score, the Elo difference and the state
+         * of the test.
+         */
+        public String summary(Sprt sprt) {
+            return summary() + String.format(", LLR %.2f (%.2f, %.2f)%s",
+                    sprt.llr(this), sprt.getLowerBound(), sprt.getUpperBound(),
+                    sprt.decision(this) > 0 ? ", H1 accepted"
+                            : sprt.decision(this) < 0 ? ", H0 accepted" : "");
+        }
+    }
+
+    /**
+     * A sequential probability ratio test of the Elo difference, with the
+     * score of a game taken as normally distributed.
+     */
+    public static class Sprt {
+        private final double elo0;
+        private final double elo1;
+        private final double alpha;
+        private final double beta;
+
+        /**
+         * Creates a test.
+         *
+         * @param elo0 the Elo difference of the null hypothesis
+         * @param elo1 the Elo difference of the alternative hypothesis
+         * @param alpha the chance of accepting elo1 when elo0 holds
+         * @param beta the chance of accepting elo0 when elo1 holds
+         */
+        public Sprt(double elo0, double elo1, double alpha, double beta) {
+            this.elo0 = elo0;
+            this.elo1 = elo1;
+            this.alpha = alpha;
+            this.beta = beta;
+        }
+
+        public double getLowerBound() {
+            return Math.log(beta / (1 - alpha));
+        }
+
+        public double getUpperBound() {
+            return Math.log((1 - beta) / alpha);
+        }
+
+        /**
+         * Returns the log-likelihood ratio of elo1 against elo0.
+         */
+        public double llr(Score score) {
+            if (score.getGames() == 0 || score.getVariance() == 0) {
+                return 0;
+            }
+
+            double s0 = Score.expected(elo0);
+            double s1 = Score.expected(elo1);
+            return score.getGames() * (s1 - s0) * (2 * score.getMean() - s0 - s1)
+                    / (2 * score.getVariance());
+        }
+
+        /**
+         * Returns 1 once elo1 is accepted, -1 once elo0 is, otherwise 0.
+         */
+        public int decision(Score score) {
+            double llr = llr(score);
+            if (llr >= getUpperBound()) return 1;
+            if (llr <= getLowerBound()) return -1;
+
+            return 0;
+        }
+    }
+
+    public static void main(String[] args) {
+        EngineConfig first = EngineConfig.fromSystemProperties();
+        EngineConfig second = EngineConfig.fromSystemProperties();
+        int games = 1000;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int size = Geometry.DEFAULT_SIZE;
+        long baseMs = 0, incrementMs = 0;
+        int openingMoves = 4, maxPlies = 300;
+        long seed = 1;
+        boolean verbose = false;
+        String record = "";
+        double[] sprt = { 0, 5, 0.05, 0.05 };
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--first":
+                        configure(first, args[++i]);
+                        break;
+                    case "--second":
+                        configure(second, args[++i]);
+                        break;
+                    case "--games":
+                        games = Integer.parseInt(args[++i]);
+                        break;
+                    case "--concurrency":
+                        concurrency = Integer.parseInt(args[++i]);
+                        break;
+                    case "--tc": {
+                        String[] tc = args[++i].split("\\+");
+                        baseMs = Math.round(Double.parseDouble(tc[0]) * 1000);
+                        incrementMs = tc.length > 1 ? Math.round(Double.parseDouble(tc[1]) * 1000) : 0;
+                        break;
+                    }
+                    case "--openings":
+                        openingMoves = Integer.parseInt(args[++i]);
+                        break;
+                    case "--size":
+                        size = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-plies":
+                        maxPlies = Integer.parseInt(args[++i]);
+                        break;
+                    case "--sprt": {
+                        String[] values = args[++i].split(",");
+                        for (int k = 0; k < values.length && k < sprt.length; k++) {
+                            sprt[k] = Double.parseDouble(values[k]);
+                        }
+                        break;
+                    }
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--verbose":
+                        verbose = true;
+                        break;
+                    case "--record":
+                        record = args[++i];
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java loa.Tournament [--first name=value,...] [--second name=value,...]"
+                    + " [--games n] [--concurrency n] [--tc base+inc] [--openings n] [--size n]"
+                    + " [--max-plies n] [--sprt elo0,elo1[,alpha,beta]] [--seed n] [--verbose]"
+                    + " [--record path]");
+            System.exit(2);
+        }
+
+        Tournament tournament = new Tournament(first, second, Geometry.of(size));
+        tournament.setTimeControl(baseMs, incrementMs);
+        tournament.setOpeningMoves(openingMoves);
+        tournament.setMaxPlies(maxPlies);
+        tournament.setSeed(seed);
+        tournament.setVerbose(verbose);
+
+        GameRecordWriter writer = null;
+        if (!record.isEmpty()) {
+            try {
+                writer = GameRecordWriter.open(Path.of(record));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            GameRecordWriter out = writer;
+            int boardSize = size;
+            tournament.setListener(result -> {
+                boolean firstRed = result.getGame() % 2 == 0;
+                try {
+                    out.write(new GameRecord(boardSize, firstRed ? "first" : "second",
+                            firstRed ? "second" : "first", result.getWinner(), result.getMoves()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        Sprt test = new Sprt(sprt[0], sprt[1], sprt[2], sprt[3]);
+        Score score;
+        try {
+            score = tournament.run(games, concurrency, test);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        System.out.println("Result: " + score.summary(test));
+        if (test.decision(score) == 0) {
+            System.out.println("No decision after " + score.getGames() + " games");
+        }
+    }
+
+    /**
+     * Applies settings given as {@code name=value} pairs separated by commas.
+     */
+    private static void configure(EngineConfig config, String settings) {
+        for (String setting : settings.split(",")) {
+            String[] pair = setting.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Not a setting: " + setting);
+            }
+            config.set(pair[0].trim(), pair[1].trim());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package loa;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size table of search results keyed by the Zobrist hash of a position.
+ * <p>
+ * The table lives in a direct buffer allocated once, outside the heap. It is
+ * split into 64-byte buckets of four 16-byte entries. An entry holds the
+ * packed data word and the key XOR-ed with it, so a probe that races with a
+ * store from another thread sees a key mismatch instead of a torn result.
+ * Several search threads can share one table without any locking.
+ * <p>
+ * The data word packs the best move (bits 0-15), the score (16-47), the
+ * depth (48-55), the bound type (56-57) and the age of the search that
+ * stored it (58-63). A data word of zero marks an empty entry.
+ */
+public class TranspositionTable {
+    /** Bound types: the score is exact, a lower bound, or an upper bound. */
+    public static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** Largest size a single direct buffer can hold. */
+    public static final int MAX_SIZE_MB = 2047;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+
+    private final ByteBuffer table;
+    private final int bucketMask;
+
+    /** Age of the current search, wrapping at 64. */
+    private volatile int age;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+
+    /**
+     * Allocates a table of at most the given size.
+     *
+     * @param sizeMb the size in megabytes, rounded down to a power of two
+     */
+    public TranspositionTable(int sizeMb) {
+        if (sizeMb < 1 || sizeMb > MAX_SIZE_MB) {
+            throw new IllegalArgumentException("Hash size must be 1 to " + MAX_SIZE_MB + " MB: " + sizeMb);
+        }
+
+        int buckets = Integer.highestOneBit((int) (((long) sizeMb << 20) / BUCKET_BYTES));
+        table = ByteBuffer.allocateDirect(buckets * BUCKET_BYTES).order(ByteOrder.nativeOrder());
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Marks the start of a new search, so entries of older searches are
+     * replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & 63;
+    }
+
+    /**
+     * Empties the table and resets the counters.
+     */
+    public void clear() {
+        for (int i = 0; i < table.capacity(); i += 8) {
+            table.putLong(i, 0);
+        }
+        hits.reset();
+        misses.reset();
+        collisions.reset();
+    }
+
+    /**
+     * Looks a position up.
+     *
+     * @param key the Zobrist hash of the position
+     * @return the data word stored for the position, or 0 if there is none
+     */
+    public long probe(long key) {
+        int base = bucketOf(key);
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int offset = base + i * ENTRY_BYTES;
+            long data = table.getLong(offset + 8);
+            if (data != 0 && (table.getLong(offset) ^ data) == key) {
+                hits.increment();
+                return data;
+            }
+        }
+
+        misses.increment();
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     * <p>
+     * An entry of the same position is overwritten unless it holds a deeper
+     * result of the current search. Otherwise the entry replaced is the one
+     * worth the least, counting four plies of depth per search it is old.
+     *
+     * @param key the Zobrist hash of the position
+     * @param depth the depth the position was searched to
+     * @param bound EXACT, LOWER or UPPER
+     * @param score the score of the position
+     * @param move the best move found, or Move.NONE
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int base = bucketOf(key);
+        int currentAge = age;
+        int victim = -1;
+        int worst = Integer.MAX_VALUE;
+        boolean evicts = true;
+
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int offset = base + i * ENTRY_BYTES;
+            long data = table.getLong(offset + 8);
+
+            if (data == 0) {
+                victim = offset;
+                evicts = false;
+                break;
+            }
+            if ((table.getLong(offset) ^ data) == key) {
+                if (depth < depth(data) && age(data) == currentAge && bound != EXACT) {
+                    return;
+                }
+                if (move == Move.NONE) {
+                    move = move(data);
+                }
+                victim = offset;
+                evicts = false;
+                break;
+            }
+
+            int worth = depth(data) - 4 * ((currentAge - age(data)) & 63);
+            if (worth < worst) {
+                worst = worth;
+                victim = offset;
+            }
+        }
+
+        if (evicts) {
+            collisions.increment();
+        }
+
+        long data = (move & 0xffffL)
+                | ((score & 0xffffffffL) << 16)
+                | ((long) (depth & 0xff) << 48)
+                | ((long) bound << 56)
+                | ((long) currentAge << 58);
+        table.putLong(victim, key ^ data);
+        table.putLong(victim + 8, data);
+    }
+
+    private int bucketOf(long key) {
+        return ((int) (key ^ (key >>> 32)) & bucketMask) * BUCKET_BYTES;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xffff);
+    }
+
+    public static int score(long data) {
+        return (int) (data >>> 16);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 48) & 0xff;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 56) & 3;
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> 58);
+    }
+
+    /**
+     * Returns the number of probes that found the position.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of probes that did not find the position.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of stores that evicted the entry of another position.
+     */
+    public long getCollisions() {
+        return collisions.sum();
+    }
+}
@@ -0,0 +1,443 @@
+package loa;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the weights of the {@link Evaluator} terms on positions labelled
+ * with the result of the game they came from, Texel style.
+ * <p>
+ * A score s of a position is read as the chance 1 / (1 + e^(-ks)) that
+ * white wins it. The scale k is fitted once, to the weights the tuning
+ * starts from. Then every weight in turn is moved up or down a step,
+ * and the move is kept if it lowers the mean squared error between
+ * those chances and the results. The step starts large and is halved
+ * whenever no move helps.
+ * <p>
+ * The positions come from self-play games and game records. They are
+ * replayed one game at a time, and only the terms of every position are
+ * kept, never the position itself. The terms are stored by column, one
+ * short per position, so they can also be saved to a cache file and
+ * tuned again later without replaying anything. The error is summed
+ * over the positions on every core.
+ * <p>
+ * The cache file starts with a header of five ints: the magic number,
+ * the version, the size of the board, the number of terms and the
+ * number of positions. Then comes a column of shorts for every term,
+ * and a column of bytes of the results: 0 for a red win, 1 for a draw
+ * and 2 for a white win.
+ * <p>
+ * Usage: {@code java loa.WeightTuner [options]}, where the options are
+ * <ul>
+ *     <li>{@code --games n}: the number of self-play games to add</li>
+ *     <li>{@code --records path}: a file of game records to add, in the
+ *     format {@link GameRecords} reads; may be given more than once</li>
+ *     <li>{@code --cache path}: where the terms are saved after the games
+ *     are added; with no games, the terms are read from it instead</li>
+ *     <li>{@code --out path}: the weights file to write, weights.properties
+ *     by default</li>
+ *     <li>{@code --engine name=value,...}: settings of the engine playing
+ *     the games, by the names of {@link EngineConfig#set}, depth=3 and no
+ *     time budget by default; its weights are the ones tuning starts from</li>
+ *     <li>{@code --concurrency n}: the number of games played at once, one
+ *     per core by default</li>
+ *     <li>{@code --threads n}: the number of threads summing the error,
+ *     one per core by default</li>
+ *     <li>{@code --openings n}: the number of random moves the self-play
+ *     games start with, 4 by default</li>
+ *     <li>{@code --skip n}: the number of plies at the start of every game
+ *     that are left out, 8 by default</li>
+ *     <li>{@code --step n}: the first step of the weights, 8 by default</li>
+ *     <li>{@code --rounds n}: the most rounds over the weights, 100 by default</li>
+ *     <li>{@code --size n}: the size of the board, 6 by default</li>
+ *     <li>{@code --seed n}: the seed of the random openings</li>
+ * </ul>
+ */
+public final class WeightTuner {
+    /** "LOAF" in ASCII. */
+    private static final int MAGIC = 0x4C4F4146;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 20;
+
+    private static final int TERMS = Evaluator.TERMS.length;
+
+    /** Number of parts the positions are split into to sum the error. */
+    private static final int PARTS = 64;
+
+    private final Geometry geometry;
+    private final int skipPlies;
+    private final Evaluator evaluator = new Evaluator();
+
+    /** The terms of every position, a column per term, and the results. */
+    private short[][] terms = new short[TERMS][1 << 12];
+    private byte[] results = new byte[1 << 12];
+    private int count;
+
+    /**
+     * Creates a tuner with no positions.
+     *
+     * @param geometry the size of the board
+     * @param skipPlies the number of plies at the start of every game that
+     *                  are left out
+     */
+    public WeightTuner(Geometry geometry, int skipPlies) {
+        this.geometry = geometry;
+        this.skipPlies = skipPlies;
+    }
+
+    /**
+     * Returns the number of positions.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Adds the positions of a game, but for those at its start and the
+     * one it ends in.
+     *
+     * @param moves the moves of the game from the starting position
+     * @param winner the side that won, or NONE for a draw
+     */
+    public void add(int[] moves, PieceType winner) {
+        byte result = (byte) (winner == PieceType.RED ? 0 : winner == PieceType.WHITE ? 2 : 1);
+        Board board = Board.initial(geometry);
+        int[] values = new int[TERMS];
+
+        for (int ply = 0; ply < moves.length; ply++) {
+            if (ply >= skipPlies) {
+                evaluator.getTerms(board, PieceType.WHITE, values);
+                add(values, result);
+            }
+            board.makeMove(Move.from(moves[ply]), Move.to(moves[ply]));
+        }
+    }
+
+    private void add(int[] values, byte result) {
+        if (count == results.length) {
+            for (int t = 0; t < TERMS; t++) {
+                terms[t] = Arrays.copyOf(terms[t], count * 2);
+            }
+            results = Arrays.copyOf(results, count * 2);
+        }
+
+        // No term comes near the limits on a board of at most 8x8
+        for (int t = 0; t < TERMS; t++) {
+            terms[t][count] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, values[t]));
+        }
+        results[count++] = result;
+    }
+
+    /**
+     * Adds the positions of the games of a record file.
+     *
+     * @param path the record file
+     * @return the number of games added
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a game
+     */
+    public int addRecords(Path path) throws IOException {
+        return GameRecords.read(path, geometry, this::add);
+    }
+
+    /**
+     * Saves the terms and results of the positions.
+     *
+     * @param path the cache file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCache(Path path) throws IOException {
+        try (OutputStream file = Files.newOutputStream(path);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(geometry.getSize());
+            out.writeInt(TERMS);
+            out.writeInt(count);
+            for (int t = 0; t < TERMS; t++) {
+                for (int i = 0; i < count; i++) {
+                    out.writeShort(terms[t][i]);
+                }
+            }
+            out.write(results, 0, count);
+        }
+    }
+
+    /**
+     * Reads the positions saved by {@link #writeCache}.
+     *
+     * @param path the cache file
+     * @param skipPlies the number of plies at the start of every game that
+     *                  are left out of any games added later
+     * @return a tuner with the positions of the file
+     * @throws IOException if the file cannot be read or is not a cache
+     */
+    public static WeightTuner readCache(Path path, int skipPlies) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getInt(12) != TERMS
+                    || channel.size() != HEADER_BYTES + (long) buffer.getInt(16) * (2 * TERMS + 1)) {
+                throw new IOException("Not a cache of the evaluation terms: " + path);
+            }
+
+            WeightTuner tuner = new WeightTuner(Geometry.of(buffer.getInt(8)), skipPlies);
+            int count = buffer.getInt(16);
+            tuner.count = count;
+            tuner.results = new byte[Math.max(count, 1)];
+            buffer.position(HEADER_BYTES);
+            for (int t = 0; t < TERMS; t++) {
+                tuner.terms[t] = new short[Math.max(count, 1)];
+                buffer.asShortBuffer().get(tuner.terms[t], 0, count);
+                buffer.position(buffer.position() + 2 * count);
+            }
+            buffer.get(tuner.results, 0, count);
+
+            return tuner;
+        }
+    }
+
+    /**
+     * Returns the mean squared error of the predicted results.
+     *
+     * @param pool the threads summing the error
+     * @param weights the weight of every term
+     * @param k the scale of the scores
+     * @return the error, between 0 and 1
+     */
+    public double error(ExecutorService pool, int[] weights, double k) {
+        List<Future<Double>> parts = new ArrayList<>();
+        for (int part = 0; part < PARTS; part++) {
+            int from = (int) ((long) count * part / PARTS);
+            int to = (int) ((long) count * (part + 1) / PARTS);
+            parts.add(pool.submit(() -> error(weights, k, from, to)));
+        }
+
+        double sum = 0;
+        try {
+            for (Future<Double> part : parts) {
+                sum += part.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tuning interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tuning failed", e.getCause());
+        }
+
+        return count == 0 ? 0 : sum / count;
+    }
+
+    private double error(int[] weights, double k, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            int score = 0;
+            for (int t = 0; t < TERMS; t++) {
+                score += weights[t] * terms[t][i];
+            }
+            double predicted = 1 / (1 + Math.exp(-k * score));
+            double error = results[i] * 0.5 - predicted;
+            sum += error * error;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Finds the scale of the scores that predicts the results best.
+     *
+     * @param pool the threads summing the error
+     * @param weights the weight of every term
+     * @return the scale
+     */
+    public double fitScale(ExecutorService pool, int[] weights) {
+        // A ternary search over the exponent, from 10^-6 to 1
+        double low = -6, high = 0;
+        for (int i = 0; i < 50; i++) {
+            double a = low + (high - low) / 3;
+            double b = high - (high - low) / 3;
+            if (error(pool, weights, Math.pow(10, a)) < error(pool, weights, Math.pow(10, b))) high = b;
+            else low = a;
+        }
+
+        return Math.pow(10, (low + high) / 2);
+    }
+
+    /**
+     * Moves the weights one step at a time while that lowers the error.
+     *
+     * @param pool the threads summing the error
+     * @param start the weights to start from
+     * @param k the scale of the scores
+     * @param step the first step, halved whenever no move helps
+     * @param rounds the most rounds over all the weights
+     * @return the best weights found
+     */
+    public int[] tune(ExecutorService pool, int[] start, double k, int step, int rounds) {
+        int[] best = start.clone();
+        double bestError = error(pool, best, k);
+        System.out.printf("Start: error %.6f, weights %s%n", bestError, Arrays.toString(best));
+
+        for (int round = 1; round <= rounds && step >= 1; round++) {
+            boolean improved = false;
+            for (int t = 0; t < TERMS; t++) {
+                for (int sign = 1; sign >= -1; sign -= 2) {
+                    int[] trial = best.clone();
+                    trial[t] += sign * step;
+                    double error = error(pool, trial, k);
+                    if (error < bestError) {
+                        best = trial;
+                        bestError = error;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+
+            System.out.printf("Round %d: step %d, error %.6f, weights %s%n",
+                    round, step, bestError, Arrays.toString(best));
+            if (!improved) step /= 2;
+        }
+
+        return best;
+    }
+
+    public static void main(String[] args) throws IOException {
+        EngineConfig config = EngineConfig.fromSystemProperties();
+        config.setMaxDepth(3);
+        config.setMoveTimeMs(0);
+        Path out = Path.of("weights.properties");
+        Path cache = null;
+        List<Path> records = new ArrayList<>();
+        int games = 0;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int openingMoves = 4, skipPlies = 8, step = 8, rounds = 100;
+        int size = Geometry.DEFAULT_SIZE;
+        long seed = 1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--games":
+                        games = Integer.parseInt(args[++i]);
+                        break;
+                    case "--records":
+                        records.add(Path.of(args[++i]));
+                        break;
+                    case "--cache":
+                        cache = Path.of(args[++i]);
+                        break;
+                    case "--out":
+                        out = Path.of(args[++i]);
+                        break;
+                    case "--engine":
+                        for (String setting : args[++i].split(",")) {
+                            String[] pair = setting.split("=", 2);
+                            if (pair.length != 2) {
+                                throw new IllegalArgumentException("Not a setting: " + setting);
+                            }
+                            config.set(pair[0].trim(), pair[1].trim());
+                        }
+                        break;
+                    case "--concurrency":
+                        concurrency = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--openings":
+                        openingMoves = Integer.parseInt(args[++i]);
+                        break;
+                    case "--skip":
+                        skipPlies = Integer.parseInt(args[++i]);
+                        break;
+                    case "--step":
+                        step = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rounds":
+                        rounds = Integer.parseInt(args[++i]);
+                        break;
+                    case "--size":
+                        size = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (games == 0 && records.isEmpty() && cache == null) {
+                throw new IllegalArgumentException("No positions: give --games, --records or --cache");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java loa.WeightTuner [--games n] [--records path] [--cache path]"
+                    + " [--out path] [--engine name=value,...] [--concurrency n] [--threads n]"
+                    + " [--openings n] [--skip n] [--step n] [--rounds n] [--size n] [--seed n]");
+            System.exit(2);
+        }
+
+        WeightTuner tuner;
+        if (games == 0 && records.isEmpty()) {
+            tuner = readCache(cache, skipPlies);
+            System.out.println("Read " + tuner.getCount() + " positions from " + cache);
+        } else {
+            Geometry geometry = Geometry.of(size);
+            tuner = new WeightTuner(geometry, skipPlies);
+            for (Path path : records) {
+                System.out.println("Added " + tuner.addRecords(path) + " games from " + path);
+            }
+
+            if (games > 0) {
+                Tournament tournament = new Tournament(config, config, geometry);
+                tournament.setOpeningMoves(openingMoves);
+                tournament.setSeed(seed);
+                WeightTuner target = tuner;
+                tournament.setListener(result -> target.add(result.getMoves(), result.getWinner()));
+
+                Tournament.Score score = tournament.run(games, concurrency);
+                System.out.println("Played " + score.getGames() + " games");
+            }
+            System.out.println("Added " + tuner.getCount() + " positions");
+
+            if (cache != null) {
+                tuner.writeCache(cache);
+                System.out.println("Wrote " + cache);
+            }
+        }
+
+        int[] start = config.getWeights().isEmpty()
+                ? Evaluator.defaultWeights() : Evaluator.readWeights(Path.of(config.getWeights()));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "loa-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            double k = tuner.fitScale(pool, start);
+            System.out.printf("Scale: %.6g%n", k);
+            int[] weights = tuner.tune(pool, start, k, step, rounds);
+            Evaluator.writeWeights(out, weights, "Tuned on " + tuner.getCount() + " positions, scale " + k);
+            System.out.println("Wrote " + out);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}